@@ -0,0 +1,144 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.tile.TileGrid;
+import notpure.game2048.model.tile.TileTransitions;
+
+/**
+ * A copy of the game state, published by the {@link GameSimulation} and read by the renderer.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class BoardSnapshot {
+
+    /**
+     * The value of each cell.
+     */
+    private final int[] values;
+    /**
+     * The transitions of the last move.
+     */
+    private final TileTransitions transitions;
+    private int score;
+    private int bestScore;
+    private boolean gameOver;
+    /**
+     * The amount of moves performed since the simulation started.
+     */
+    private long moveCount;
+    /**
+     * The amount of resets performed since the simulation started.
+     */
+    private long resetCount;
+
+    /**
+     * Constructs a new BoardSnapshot.
+     *
+     * @param cells amount of cells in the grid
+     */
+    public BoardSnapshot(int cells) {
+        values = new int[cells];
+        transitions = new TileTransitions(cells);
+    }
+
+    /**
+     * Copies the current state of the game into this snapshot.
+     *
+     * @param game       game to copy
+     * @param moveCount  moves performed so far
+     * @param resetCount resets performed so far
+     */
+    public void capture(Game game, long moveCount, long resetCount) {
+        TileGrid tiles = game.getTiles();
+
+        for (int cell = 0; cell < values.length; cell++) {
+            values[cell] = tiles.getValue(cell);
+        }
+        transitions.copyFrom(tiles.getTransitions());
+        score = game.getScore();
+        bestScore = game.getBestScore();
+        gameOver = !tiles.hasMoves();
+        this.moveCount = moveCount;
+        this.resetCount = resetCount;
+    }
+
+    /**
+     * Copies a packed board into this snapshot, without transitions, for tools playing by {@link BoardRules}.
+     *
+     * @param rules     rules of the board, of the same grid size
+     * @param board     board
+     * @param score     score
+     * @param bestScore best score
+     * @param moveCount moves performed so far
+     */
+    public void capture(BoardRules rules, long board, int score, int bestScore, long moveCount) {
+        rules.decode(board, values);
+        transitions.clear();
+        this.score = score;
+        this.bestScore = bestScore;
+        gameOver = !rules.hasMoves(board);
+        this.moveCount = moveCount;
+        resetCount = 0;
+    }
+
+    /**
+     * Copies the given snapshot into this one.
+     *
+     * @param other snapshot to copy, of the same grid size
+     */
+    public void copyFrom(BoardSnapshot other) {
+        System.arraycopy(other.values, 0, values, 0, values.length);
+        transitions.copyFrom(other.transitions);
+        score = other.score;
+        bestScore = other.bestScore;
+        gameOver = other.gameOver;
+        moveCount = other.moveCount;
+        resetCount = other.resetCount;
+    }
+
+    public int[] getValues() {
+        return values;
+    }
+
+    public TileTransitions getTransitions() {
+        return transitions;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    public long getResetCount() {
+        return resetCount;
+    }
+}
@@ -18,14 +18,26 @@
 
 package notpure.game2048;
 
+import notpure.game2048.ai.BookPlayer;
+import notpure.game2048.ai.EvaluationCache;
+import notpure.game2048.ai.ExpectimaxPlayer;
+import notpure.game2048.ai.MonteCarloPlayer;
+import notpure.game2048.ai.OpeningBook;
+import notpure.game2048.ai.Player;
 import notpure.game2048.model.ColourScheme;
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.tile.TileAnimator;
 import notpure.game2048.model.tile.TileGrid;
+import notpure.game2048.telemetry.PrometheusExporter;
+import notpure.game2048.telemetry.Telemetry;
 import org.lwjgl.LWJGLUtil;
 import org.newdawn.slick.*;
 import org.newdawn.slick.Graphics;
 
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,6 +50,46 @@ public final class Game extends BasicGame {
 
     private static final String VERSION = "v1.0.3";
     private static final String WINDOW_TITLE = "game-2048 (" + VERSION + ")";
+    /**
+     * The size of the grid. Compile-time constants, so headless tools sizing their grids by them do not load
+     * this class and with it Slick2D.
+     */
+    public static final int ROWS = 4;
+    public static final int COLS = 4;
+    /**
+     * The target frame rate while the game state or animations are changing.
+     */
+    private static final int FRAME_RATE = 60;
+    /**
+     * The target frame rate once nothing has changed for {@link #IDLE_DELAY_MILLIS}.
+     */
+    private static final int IDLE_FRAME_RATE = 20;
+    private static final int IDLE_DELAY_MILLIS = 1000;
+    /**
+     * The system property choosing the auto player: {@code expectimax} (the default) or {@code montecarlo}.
+     */
+    private static final String PLAYER_PROPERTY = "game2048.player";
+    /**
+     * The system property naming an {@link OpeningBook} file the auto player consults first.
+     */
+    private static final String BOOK_PROPERTY = "game2048.book";
+    /**
+     * The system property setting the moves per second of the auto player, 0 for as fast as it chooses them.
+     */
+    private static final String AUTO_RATE_PROPERTY = "game2048.autorate";
+    /**
+     * The amount of moves the expectimax auto player looks ahead.
+     */
+    private static final int AUTO_PLAYER_DEPTH = 2;
+    /**
+     * The evaluations cached by the expectimax auto player, 16 bytes each.
+     */
+    private static final int AUTO_PLAYER_CACHE_CAPACITY = 1 << 18;
+    /**
+     * The playouts per candidate move and the time per move of the Monte Carlo auto player.
+     */
+    private static final int AUTO_PLAYER_PLAYOUTS = 1000;
+    private static final long AUTO_PLAYER_BUDGET_NANOS = 50_000_000L;
     /**
      * A mapping, translating key code (key) to direction (value).
      */
@@ -57,18 +109,19 @@ public final class Game extends BasicGame {
      * @throws org.newdawn.slick.SlickException
      */
     public static void main(String[] args) throws SlickException {
-        // Setting the LWJGL class path
-        System.setProperty("org.lwjgl.librarypath",
-                new File(new File(System.getProperty("user.dir"), "natives"),
-                        LWJGLUtil.getPlatformName()).getAbsolutePath());
-        System.setProperty("net.java.games.input.librarypath",
-                System.getProperty("org.lwjgl.librarypath"));
+        setNativeLibraryPath();
+
+        try {
+            PrometheusExporter.startFromProperties();
+        } catch (IOException e) {
+            throw new SlickException("Unable to export telemetry", e);
+        }
 
         // Creating a game container
         AppGameContainer gc = new AppGameContainer(new Game());
 
         // Graphics options
-        gc.setTargetFrameRate(60);
+        gc.setTargetFrameRate(FRAME_RATE);
         gc.setShowFPS(false);
         gc.setAlwaysRender(true);
         gc.setSmoothDeltas(true);
@@ -78,6 +131,17 @@ public final class Game extends BasicGame {
         gc.start();
     }
 
+    /**
+     * Points LWJGL and JInput at the native libraries for this platform, only needed to open a window.
+     */
+    private static void setNativeLibraryPath() {
+        System.setProperty("org.lwjgl.librarypath",
+                new File(new File(System.getProperty("user.dir"), "natives"),
+                        LWJGLUtil.getPlatformName()).getAbsolutePath());
+        System.setProperty("net.java.games.input.librarypath",
+                System.getProperty("org.lwjgl.librarypath"));
+    }
+
     private GameContainer gc;
     /**
      * The game renderer.
@@ -87,6 +151,32 @@ public final class Game extends BasicGame {
      * Tile set.
      */
     private TileGrid tiles;
+    /**
+     * Animates the moves made on the tile set.
+     */
+    private TileAnimator animator;
+    /**
+     * Runs the game logic on its own thread.
+     */
+    private GameSimulation simulation;
+    /**
+     * The game states published by the simulation.
+     */
+    private SnapshotBuffer snapshots;
+    /**
+     * The move and reset counts of the snapshot being displayed.
+     */
+    private long displayedMoveCount;
+    private long displayedResetCount;
+    /**
+     * Milliseconds passed since the displayed state last changed.
+     */
+    private int idleMillis;
+    private boolean idle;
+    /**
+     * Plays the game when toggled on.
+     */
+    private Player autoPlayer;
     /**
      * Current score.
      */
@@ -111,24 +201,136 @@ public final class Game extends BasicGame {
         this.gc = gc;
 
         // Load tile colours
-        ColourScheme.load(getClass().getResourceAsStream("/notpure/game2048/model/styles.txt"));
+        ColourScheme.loadDefault();
 
         // Initialises the renderer
         gameRenderer = new GameRenderer(this);
 
         // Initialises and creates the tile set
-        tiles = new TileGrid(this, 4, 4);
-        tiles.reset();
-        tiles.insertRandomTile();
+        initTiles();
+        animator = new TileAnimator(tiles);
+
+        // Initialises the auto player
+        autoPlayer = createAutoPlayer();
+
+        // Publishes the initial state and starts the game logic
+        snapshots = new SnapshotBuffer(tiles.getCellCount());
+        simulation = new GameSimulation(this, snapshots);
+        simulation.setAutoMoveRate(Integer.getInteger(AUTO_RATE_PROPERTY,
+                GameSimulation.DEFAULT_AUTO_MOVES_PER_SECOND));
+        simulation.publish();
+        snapshots.poll();
+        animator.show(snapshots.front().getValues());
+        simulation.start();
 
         // Update game size
         Dimension gameDimension = tiles.getGameDimensions();
         ((AppGameContainer) gc).setDisplayMode((int) gameDimension.getWidth(), (int) gameDimension.getHeight(), false);
     }
 
+    /**
+     * Creates the auto player chosen by {@value #PLAYER_PROPERTY}, consulting the opening book named by
+     * {@value #BOOK_PROPERTY} first if any.
+     *
+     * @return auto player
+     * @throws SlickException if the opening book cannot be loaded or is for another grid size
+     */
+    private Player createAutoPlayer() throws SlickException {
+        BoardRules rules = new BoardRules(tiles.getRows(), tiles.getCols());
+        Player player = createSearchPlayer(rules);
+        String path = System.getProperty(BOOK_PROPERTY);
+
+        if (path == null) {
+            return player;
+        }
+        OpeningBook book;
+
+        try {
+            book = OpeningBook.open(Paths.get(path));
+        } catch (IOException e) {
+            throw new SlickException("Unable to load opening book: " + path, e);
+        }
+
+        if (!book.covers(rules)) {
+            throw new SlickException("Opening book " + path + " is not for " + rules.getRows() + "x"
+                    + rules.getCols() + " grids");
+        }
+        return new BookPlayer(rules, book, player);
+    }
+
+    /**
+     * Creates the player chosen by {@value #PLAYER_PROPERTY}.
+     *
+     * @param rules rules of the grid
+     * @return player
+     */
+    private static Player createSearchPlayer(BoardRules rules) {
+        if ("montecarlo".equals(System.getProperty(PLAYER_PROPERTY))) {
+            return new MonteCarloPlayer(rules, AUTO_PLAYER_PLAYOUTS, AUTO_PLAYER_BUDGET_NANOS,
+                    Runtime.getRuntime().availableProcessors(), System.nanoTime());
+        }
+        EvaluationCache cache = new EvaluationCache(AUTO_PLAYER_CACHE_CAPACITY);
+        cache.exportCounters(Telemetry.global());
+        return new ExpectimaxPlayer(rules, null, cache, AUTO_PLAYER_DEPTH);
+    }
+
+    /**
+     * Creates the tile set and inserts the first tile.
+     */
+    private void initTiles() {
+        tiles = new TileGrid(this, ROWS, COLS);
+        tiles.reset();
+        tiles.insertRandomTile();
+    }
+
+    /**
+     * Takes the latest game state from the simulation and advances the tile animations.
+     */
     @Override
-    public void update(GameContainer gc, int i) throws SlickException {
+    public void update(GameContainer gc, int delta) throws SlickException {
+        boolean changed = snapshots.poll();
+
+        if (changed) {
+            BoardSnapshot snapshot = snapshots.front();
+
+            // Animating only single moves, anything else is shown as it is
+            if (snapshot.getResetCount() == displayedResetCount
+                    && snapshot.getMoveCount() == displayedMoveCount + 1) {
+                animator.start(snapshot.getValues(), snapshot.getTransitions());
+            } else {
+                animator.show(snapshot.getValues());
+            }
+            displayedMoveCount = snapshot.getMoveCount();
+            displayedResetCount = snapshot.getResetCount();
+        }
+        animator.update(delta);
+
+        // Dropping the frame rate while nothing changes
+        if (changed || animator.isAnimating()) {
+            setIdle(false);
+        } else {
+            idleMillis += delta;
 
+            if (idleMillis >= IDLE_DELAY_MILLIS) {
+                setIdle(true);
+            }
+        }
+    }
+
+    /**
+     * Switches between the idle and regular frame rates.
+     *
+     * @param idle whether or not the game is idle
+     */
+    private void setIdle(boolean idle) {
+        if (!idle) {
+            idleMillis = 0;
+        }
+
+        if (this.idle != idle) {
+            this.idle = idle;
+            gc.setTargetFrameRate(idle ? IDLE_FRAME_RATE : FRAME_RATE);
+        }
     }
 
     /**
@@ -139,23 +341,25 @@ public final class Game extends BasicGame {
         // Game background
         gameRenderer.renderBackground(gc, g);
 
-        // Renders the tile set
-        tiles.render(g);
+        // Renders the tile set, or the move being animated
+        animator.render(g);
 
         // Rendering the player score
         gameRenderer.renderScore(g, gc.isShowingFPS());
 
         // Rendering the game over text
-        if (!tiles.hasMoves()) {
+        if (getSnapshot().isGameOver()) {
             gameRenderer.renderGameOverText(g);
         }
     }
 
     /**
-     * Handles game input.
+     * Handles game input, passing game commands to the simulation.
      */
     @Override
     public void keyReleased(int keyCode, char keyChar) {
+        setIdle(false);
+
         // Display FPS toggle
         if (keyCode == Input.KEY_F) {
             gc.setShowFPS(!gc.isShowingFPS());
@@ -163,22 +367,25 @@ public final class Game extends BasicGame {
 
         // Reset game
         if (keyCode == Input.KEY_R) {
-            reset();
+            simulation.submitReset();
+        }
+
+        // Auto player toggle
+        if (keyCode == Input.KEY_A) {
+            simulation.setAutoPlayer(simulation.getAutoPlayer() == null ? autoPlayer : null);
         }
 
-        // Performing tile set movement
-        if (tiles.hasMoves()) {
-            for (Map.Entry<Integer, TileGrid.Direction> entry : MOVEMENT_MAP.entrySet()) {
-                if (keyCode == entry.getKey()) {
-                    tiles.performMove(entry.getValue());
-                    break;
-                }
+        // Performing tile set movement, an animation still in progress is fast-forwarded once the move is made
+        for (Map.Entry<Integer, TileGrid.Direction> entry : MOVEMENT_MAP.entrySet()) {
+            if (keyCode == entry.getKey()) {
+                simulation.submitMove(entry.getValue());
+                break;
             }
         }
     }
 
     /**
-     * Resets the current game and updates the best score is necessary.
+     * Resets the current game and updates the best score is necessary, from the simulation thread.
      */
     public void reset() {
         // Updating the best score
@@ -192,6 +399,15 @@ public final class Game extends BasicGame {
         getTiles().insertRandomTile();
     }
 
+    /**
+     * Gets the latest game state published by the simulation, from the render thread.
+     *
+     * @return snapshot
+     */
+    public BoardSnapshot getSnapshot() {
+        return snapshots.front();
+    }
+
     /**
      * Returns the TileSet associated with this Game.
      *
@@ -66,8 +66,8 @@ public final class GameRenderer {
         int y = showingFps ? 30 : 5;
 
         g.setColor(ColourScheme.getScoreTextColor());
-        g.drawString("Score: " + game.getScore(), 8, y);
-        g.drawString("Best Score: " + game.getBestScore(), 8, y + 20);
+        g.drawString("Score: " + game.getSnapshot().getScore(), 8, y);
+        g.drawString("Best Score: " + game.getSnapshot().getBestScore(), 8, y + 20);
     }
 
     /**
@@ -76,7 +76,7 @@ public final class GameRenderer {
      * @param g
      */
     public void renderGameOverText(Graphics g) {
-        final String scoreText = "Game over, your score is: " + game.getScore() + "!";
+        final String scoreText = "Game over, your score is: " + game.getSnapshot().getScore() + "!";
         int scoreTextWidth = g.getFont().getWidth(scoreText) + 10;
 
         // Background rectangle, to make the text clearer
@@ -0,0 +1,400 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048;
+
+import notpure.game2048.ai.Player;
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.tile.MoveEvents;
+import notpure.game2048.model.tile.TileGrid;
+import notpure.game2048.telemetry.Telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the game logic on its own thread at a fixed timestep, independent of the render loop.
+ * Input is handed over through a single-producer single-consumer command queue, and the resulting state is
+ * published to the renderer through a {@link SnapshotBuffer}. The thread sleeps while there is neither input
+ * nor an auto player, and an auto player moves at a set rate or as fast as it chooses its moves.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class GameSimulation implements Runnable {
+
+    /**
+     * The amount of simulation ticks per second.
+     */
+    public static final int TICKS_PER_SECOND = 1000;
+    private static final long TICK_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+    /**
+     * How far the simulation may fall behind before it stops trying to catch up.
+     */
+    private static final long MAX_LAG_NANOS = 100 * TICK_NANOS;
+    /**
+     * The command queue capacity, a power of two.
+     */
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int QUEUE_MASK = QUEUE_CAPACITY - 1;
+    /**
+     * The reset command, other commands are {@link TileGrid.Direction} ordinals.
+     */
+    private static final int RESET = -1;
+    /**
+     * Returned by {@link #poll()} when the queue is empty.
+     */
+    private static final int NO_COMMAND = -2;
+    private static final TileGrid.Direction[] DIRECTIONS = TileGrid.Direction.values();
+    /**
+     * The auto player rate making moves as fast as they are chosen.
+     */
+    public static final int UNLIMITED_AUTO_MOVES = 0;
+    /**
+     * The moves per second of the auto player by default, slow enough to follow.
+     */
+    public static final int DEFAULT_AUTO_MOVES_PER_SECOND = 7;
+
+    /**
+     * The {@link Game} whose logic is being run.
+     */
+    private final Game game;
+    /**
+     * Where the game state is published to.
+     */
+    private final SnapshotBuffer snapshots;
+    private final int[] commands = new int[QUEUE_CAPACITY];
+    /**
+     * The index of the next command to read, written by the simulation thread only.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The index of the next command to write, written by the input thread only.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean running;
+    /**
+     * The simulation thread, woken by new commands while idle.
+     */
+    private volatile Thread thread;
+    private long moveCount;
+    private long resetCount;
+    /**
+     * Makes the moves while set, or null.
+     */
+    private volatile Player autoPlayer;
+    private final BoardRules rules;
+    /**
+     * The nanoseconds between two moves of the auto player, 0 if unlimited.
+     */
+    private volatile long autoMoveNanos = 1_000_000_000L / DEFAULT_AUTO_MOVES_PER_SECOND;
+    /**
+     * The auto player of the last tick, to notice a new one.
+     */
+    private Player lastAutoPlayer;
+    private long nextAutoMove;
+    /**
+     * Reads the moves made for the telemetry.
+     */
+    private final MoveEvents.Cursor events;
+    private final long[] eventBatch = new long[64];
+    private final Telemetry telemetry = Telemetry.global();
+    /**
+     * Whether or not the current game was recorded as finished.
+     */
+    private boolean finishRecorded;
+    /**
+     * The largest tile of the current game, followed through the events.
+     */
+    private int maxTile;
+
+    /**
+     * Constructs a new GameSimulation.
+     *
+     * @param game      game to run
+     * @param snapshots buffer to publish the game state to
+     */
+    public GameSimulation(Game game, SnapshotBuffer snapshots) {
+        this.game = game;
+        this.snapshots = snapshots;
+        rules = new BoardRules(game.getTiles().getRows(), game.getTiles().getCols());
+        events = game.getTiles().getEvents().subscribe();
+        maxTile = rules.maxValue(rules.encode(game.getTiles()));
+    }
+
+    /**
+     * Starts the simulation thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "game-simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the simulation thread after its current tick.
+     */
+    public void stop() {
+        running = false;
+        wake();
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+
+        while (running) {
+            if (tick(nextTick)) {
+                recordTelemetry();
+                publish();
+            }
+
+            // Sleeping until there is something to do, a command queued meanwhile leaving a permit to wake up
+            if (autoPlayer == null && head.get() == tail.get()) {
+                LockSupport.park(this);
+                nextTick = System.nanoTime();
+                continue;
+            }
+            nextTick += TICK_NANOS;
+            long remaining = nextTick - System.nanoTime();
+
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            } else if (remaining < -MAX_LAG_NANOS) {
+                nextTick = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Processes all queued commands and makes the auto player's moves due.
+     *
+     * @param now time of the tick
+     * @return whether or not the game state changed
+     */
+    private boolean tick(long now) {
+        boolean changed = false;
+        int command;
+
+        while ((command = poll()) != NO_COMMAND) {
+            if (command == RESET) {
+                game.reset();
+                resetCount++;
+                changed = true;
+            } else if (game.getTiles().hasMoves()) {
+                game.getTiles().performMove(DIRECTIONS[command]);
+                moveCount++;
+                changed = true;
+            }
+        }
+        Player player = autoPlayer;
+
+        if (player != lastAutoPlayer) {
+            lastAutoPlayer = player;
+            nextAutoMove = now;
+        }
+
+        if (player != null) {
+            changed |= autoMoves(player, now);
+        }
+        return changed;
+    }
+
+    /**
+     * Makes the auto player's moves due, for at most a tick's time so the state keeps being published.
+     *
+     * @param player auto player
+     * @param now    time of the tick
+     * @return whether or not a move was made
+     */
+    private boolean autoMoves(Player player, long now) {
+        long interval = autoMoveNanos;
+        long end = System.nanoTime() + TICK_NANOS;
+        boolean moved = false;
+
+        if (interval == 0) {
+            while (System.nanoTime() - end < 0 && autoMove(player)) {
+                moved = true;
+            }
+            return moved;
+        }
+
+        while (now - nextAutoMove >= 0 && System.nanoTime() - end < 0) {
+            if (!autoMove(player)) {
+                nextAutoMove = now + interval;
+                return moved;
+            }
+            moved = true;
+            nextAutoMove += interval;
+        }
+
+        // Not catching up on moves the player was too slow to make
+        if (now - nextAutoMove > MAX_LAG_NANOS) {
+            nextAutoMove = now;
+        }
+        return moved;
+    }
+
+    /**
+     * Makes the move chosen by the auto player.
+     *
+     * @param player auto player
+     * @return whether or not a move was made
+     */
+    private boolean autoMove(Player player) {
+        TileGrid tiles = game.getTiles();
+
+        if (!tiles.hasMoves()) {
+            return false;
+        }
+        int dir = player.chooseMove(rules.encode(tiles));
+
+        if (dir == Player.NO_MOVE) {
+            return false;
+        }
+        tiles.performMove(DIRECTIONS[dir]);
+        moveCount++;
+        return true;
+    }
+
+    /**
+     * Records the moves made since the last tick and the score they gained, and the game if a move ended it.
+     * The largest tile is followed through the events, the grid being read only after lost events.
+     */
+    private void recordTelemetry() {
+        boolean moved = false;
+        int count;
+
+        while ((count = events.drain(eventBatch)) != 0) {
+            if (count == MoveEvents.LOST) {
+                maxTile = rules.maxValue(rules.encode(game.getTiles()));
+                moved = true;
+                continue;
+            }
+
+            for (int i = 0; i < count; i++) {
+                long event = eventBatch[i];
+
+                switch (MoveEvents.getType(event)) {
+                    case MoveEvents.MOVE:
+                        telemetry.recordMove();
+                        telemetry.recordScore(MoveEvents.getValue(event));
+                        moved = true;
+                        break;
+                    case MoveEvents.MERGE:
+                    case MoveEvents.SPAWN:
+                        maxTile = Math.max(maxTile, MoveEvents.getValue(event));
+                        break;
+                    case MoveEvents.RESET:
+                        finishRecorded = false;
+                        maxTile = 0;
+                        break;
+                }
+            }
+        }
+
+        if (moved && !finishRecorded && !game.getTiles().hasMoves()) {
+            finishRecorded = true;
+            telemetry.recordGameOver(game.getScore(), maxTile);
+        }
+    }
+
+    /**
+     * Publishes the current game state, from the simulation thread or before it is started.
+     */
+    public void publish() {
+        snapshots.back().capture(game, moveCount, resetCount);
+        snapshots.publish();
+    }
+
+    /**
+     * Queues a move, from the input thread.
+     *
+     * @param dir direction to move in
+     * @return whether or not the move was queued
+     */
+    public boolean submitMove(TileGrid.Direction dir) {
+        return offer(dir.ordinal());
+    }
+
+    /**
+     * Queues a game reset, from the input thread.
+     *
+     * @return whether or not the reset was queued
+     */
+    public boolean submitReset() {
+        return offer(RESET);
+    }
+
+    /**
+     * Lets a player make the moves, from any thread. Moves can still be queued meanwhile.
+     *
+     * @param player player, or null to stop
+     */
+    public void setAutoPlayer(Player player) {
+        autoPlayer = player;
+        wake();
+    }
+
+    public Player getAutoPlayer() {
+        return autoPlayer;
+    }
+
+    /**
+     * Sets how fast the auto player moves, from any thread.
+     *
+     * @param movesPerSecond moves per second, or {@link #UNLIMITED_AUTO_MOVES} for as fast as they are chosen
+     */
+    public void setAutoMoveRate(int movesPerSecond) {
+        if (movesPerSecond < 0) {
+            throw new IllegalArgumentException("Auto move rate must not be negative: " + movesPerSecond);
+        }
+        autoMoveNanos = movesPerSecond == UNLIMITED_AUTO_MOVES ? 0 : Math.max(1, 1_000_000_000L / movesPerSecond);
+    }
+
+    private void wake() {
+        Thread t = thread;
+
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private boolean offer(int command) {
+        long t = tail.get();
+
+        if (t - head.get() == QUEUE_CAPACITY) {
+            return false;
+        }
+        commands[(int) t & QUEUE_MASK] = command;
+        tail.set(t + 1);
+        wake();
+        return true;
+    }
+
+    private int poll() {
+        long h = head.get();
+
+        if (h == tail.get()) {
+            return NO_COMMAND;
+        }
+        int command = commands[(int) h & QUEUE_MASK];
+        head.lazySet(h + 1);
+        return command;
+    }
+}
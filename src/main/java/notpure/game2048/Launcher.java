@@ -0,0 +1,242 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048;
+
+import notpure.game2048.ai.EvaluationCacheBenchmark;
+import notpure.game2048.ai.MonteCarloBenchmark;
+import notpure.game2048.ai.Player;
+import notpure.game2048.ai.SymmetryStudy;
+import notpure.game2048.ai.Tablebase;
+import notpure.game2048.ai.Tournament;
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameCheckpointBenchmark;
+import notpure.game2048.server.LoadGenerator;
+import notpure.game2048.server.RaceServer;
+import notpure.game2048.server.SpectatorBenchmark;
+import notpure.game2048.telemetry.PrometheusExporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Starts the game in the given mode, loading only the classes that mode needs: Slick2D, LWJGL and the native
+ * libraries are only touched by the {@code gui} mode, so headless modes start faster and need no natives.
+ * <p>
+ * Usage: {@code Launcher [gui]},
+ * {@code Launcher sim [--grid <rows>x<cols>] [--tablebase file] [games] [player]}, {@code Launcher server [args...]},
+ * {@code Launcher server --train [seconds]} or
+ * {@code Launcher bench <tournament|montecarlo|cache|symmetry|spectator|load|checkpoint> [args...]}, the
+ * benchmarks taking the arguments of their own main classes and the players being those of {@link Tournament}.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class Launcher {
+
+    private static final int DEFAULT_SIM_GAMES = 10;
+    private static final String DEFAULT_SIM_PLAYER = "expectimax:2";
+    private static final int DEFAULT_TRAIN_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        long mainMillis = System.currentTimeMillis();
+        String mode = args.length > 0 ? args[0] : "gui";
+        String[] rest = args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args;
+
+        switch (mode) {
+            case "gui":
+                Game.main(rest);
+                break;
+            case "sim":
+                simulate(rest, mainMillis);
+                break;
+            case "server":
+                if (rest.length > 0 && rest[0].equals("--train")) {
+                    trainServer(rest.length > 1 ? Integer.parseInt(rest[1]) : DEFAULT_TRAIN_SECONDS);
+                } else {
+                    RaceServer.main(rest);
+                }
+                break;
+            case "bench":
+                if (rest.length == 0 || !benchmark(rest[0], Arrays.copyOfRange(rest, 1, rest.length))) {
+                    usage();
+                }
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: Launcher [gui]");
+        System.err.println("       Launcher sim [--grid <rows>x<cols>] [--tablebase file] [games] [player]");
+        System.err.println("       Launcher server [port] [groups] [sessions per group]");
+        System.err.println("       Launcher server --train [seconds]");
+        System.err.println("       Launcher bench <tournament|montecarlo|cache|symmetry|spectator|load|checkpoint> [args...]");
+        System.exit(1);
+    }
+
+    /**
+     * Runs the named benchmark.
+     *
+     * @return whether or not the benchmark exists
+     */
+    private static boolean benchmark(String name, String[] args) throws Exception {
+        switch (name) {
+            case "tournament":
+                Tournament.main(args);
+                return true;
+            case "montecarlo":
+                MonteCarloBenchmark.main(args);
+                return true;
+            case "cache":
+                EvaluationCacheBenchmark.main(args);
+                return true;
+            case "symmetry":
+                SymmetryStudy.main(args);
+                return true;
+            case "spectator":
+                SpectatorBenchmark.main(args);
+                return true;
+            case "load":
+                LoadGenerator.main(args);
+                return true;
+            case "checkpoint":
+                GameCheckpointBenchmark.main(args);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Serves a {@link LoadGenerator} for a few seconds on a server set up as {@code server} sets it up, then stops,
+     * to train the class-data sharing archive of the {@code server} mode.
+     *
+     * @param seconds seconds to serve for
+     */
+    private static void trainServer(int seconds) throws Exception {
+        PrometheusExporter.startFromProperties();
+        RaceServer server = new RaceServer(0, Runtime.getRuntime().availableProcessors(),
+                RaceServer.DEFAULT_SESSIONS_PER_GROUP);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "race-acceptor");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try {
+            LoadGenerator.main(new String[]{String.valueOf(server.getPort()), "8", "100", String.valueOf(seconds),
+                    "16"});
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Plays a {@link Tournament} of one player on the seeds from 0 on one thread, reporting its summary and how
+     * long the first move took to be made after the JVM started.
+     *
+     * @param args       {@code [--grid <rows>x<cols>] [--tablebase file] [games] [player]}
+     * @param mainMillis time main was entered
+     */
+    private static void simulate(String[] args, long mainMillis) throws IOException, InterruptedException {
+        BoardRules rules = new BoardRules(4, 4);
+        Tablebase tablebase = null;
+        int arg = 0;
+
+        for (; arg < args.length && args[arg].startsWith("--"); arg++) {
+            switch (args[arg]) {
+                case "--grid":
+                    rules = Tournament.rules(args[++arg]);
+                    break;
+                case "--tablebase":
+                    tablebase = Tablebase.open(Paths.get(args[++arg]));
+                    break;
+                default:
+                    usage();
+            }
+        }
+        int games = args.length > arg ? Integer.parseInt(args[arg]) : DEFAULT_SIM_GAMES;
+        String spec = args.length > arg + 1 ? args[arg + 1] : DEFAULT_SIM_PLAYER;
+        long[] seeds = new long[games];
+
+        for (int i = 0; i < games; i++) {
+            seeds[i] = i;
+        }
+        Tournament tournament = new Tournament(rules, seeds, 1);
+        Tournament.PlayerFactory factory = Tournament.factory(rules, spec, tablebase);
+        FirstMoveClock clock = new FirstMoveClock();
+        Tournament.Result[] results = tournament.play(spec, seed -> clock.wrap(factory.create(seed)));
+
+        // Queried only now, to keep the management classes out of the measured start up
+        long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println(Tournament.summarise(spec, results).toText());
+        System.out.printf(Locale.ROOT, "First move %d ms after JVM start (%d ms after entering main)%n",
+                clock.firstMoveMillis - jvmStartMillis, clock.firstMoveMillis - mainMillis);
+    }
+
+    /**
+     * Notes the time the first move of any of its players was chosen.
+     */
+    private static final class FirstMoveClock {
+
+        /**
+         * Written by the game thread, read once the games are over.
+         */
+        private volatile long firstMoveMillis;
+
+        Player wrap(Player player) {
+            return new TimedPlayer(player);
+        }
+
+        private final class TimedPlayer implements Player, Closeable {
+
+            private final Player player;
+
+            private TimedPlayer(Player player) {
+                this.player = player;
+            }
+
+            @Override
+            public int chooseMove(long board) {
+                int dir = player.chooseMove(board);
+
+                if (dir != NO_MOVE && firstMoveMillis == 0) {
+                    firstMoveMillis = System.currentTimeMillis();
+                }
+                return dir;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (player instanceof Closeable) {
+                    ((Closeable) player).close();
+                }
+            }
+        }
+    }
+}
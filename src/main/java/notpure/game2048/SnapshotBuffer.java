@@ -0,0 +1,99 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of {@link BoardSnapshot}s, with one writer and one reader.
+ * The writer fills the back buffer and swaps it with the middle one, the reader swaps the middle buffer with
+ * the front one whenever it is newer. Neither side ever waits, and neither ever sees a buffer being written.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class SnapshotBuffer {
+
+    /**
+     * The bit set on the middle index when it holds a snapshot the reader has not taken yet.
+     */
+    private static final int DIRTY = 4;
+    private static final int INDEX_MASK = 3;
+    private final BoardSnapshot[] buffers = new BoardSnapshot[3];
+    /**
+     * The index of the middle buffer, shared by both sides.
+     */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    /**
+     * The index of the buffer owned by the writer.
+     */
+    private int back = 0;
+    /**
+     * The index of the buffer owned by the reader.
+     */
+    private int front = 2;
+
+    /**
+     * Constructs a new SnapshotBuffer.
+     *
+     * @param cells amount of cells in the grid
+     */
+    public SnapshotBuffer(int cells) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new BoardSnapshot(cells);
+        }
+    }
+
+    /**
+     * Gets the buffer to write the next snapshot into, writer side only.
+     *
+     * @return back buffer
+     */
+    public BoardSnapshot back() {
+        return buffers[back];
+    }
+
+    /**
+     * Publishes the back buffer to the reader, writer side only.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | DIRTY) & INDEX_MASK;
+    }
+
+    /**
+     * Takes the latest published snapshot if there is a new one, reader side only.
+     *
+     * @return whether or not the front buffer changed
+     */
+    public boolean poll() {
+        if ((middle.get() & DIRTY) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Gets the latest snapshot taken by {@link #poll()}, reader side only.
+     *
+     * @return front buffer
+     */
+    public BoardSnapshot front() {
+        return buffers[front];
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays the move of an {@link OpeningBook} where the board is in it, and asks another player otherwise, so
+ * the opening boards are not searched again.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class BookPlayer implements Player, Closeable {
+
+    private final BoardRules rules;
+    private final OpeningBook book;
+    private final Player fallback;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a new BookPlayer.
+     *
+     * @param rules    rules of the game
+     * @param book     opening book for boards of the same size
+     * @param fallback player choosing the moves not in the book
+     */
+    public BookPlayer(BoardRules rules, OpeningBook book, Player fallback) {
+        if (!book.covers(rules)) {
+            throw new IllegalArgumentException("Opening book is for " + book.getRows() + "x" + book.getCols()
+                    + " grids");
+        }
+        this.rules = rules;
+        this.book = book;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int chooseMove(long board) {
+        int move = book.getBestMove(board);
+
+        if (move != NO_MOVE && rules.canMove(board, move)) {
+            hits.increment();
+            return move;
+        }
+        misses.increment();
+        return fallback.chooseMove(board);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fallback instanceof Closeable) {
+            ((Closeable) fallback).close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.GameRandom;
+import notpure.game2048.telemetry.Telemetry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-capacity cache of board evaluations, keyed by a long, safe to share between threads without locks.
+ * <p>
+ * Entries live in a single {@link AtomicLongArray} as pairs of longs, in sets of two ways: a key maps to one
+ * set and is stored in either of its ways, a miss evicting the way not used most recently. An entry holds
+ * {@code key ^ value} and {@code value} rather than the key itself, so an entry torn by concurrent writers
+ * fails the check and reads as a miss instead of returning another board's value. Key 0 is never cached,
+ * as it would match an empty entry.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class EvaluationCache {
+
+    private static final int WAYS = 2;
+    /**
+     * The longs per entry: the checked key and the value bits.
+     */
+    private static final int ENTRY_LONGS = 2;
+
+    private final AtomicLongArray entries;
+    /**
+     * The way of each set used most recently. Racy on purpose, as a lost update only affects which entry is
+     * evicted.
+     */
+    private final byte[] recentWays;
+    private final int setShift;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a new EvaluationCache.
+     *
+     * @param capacity maximum amount of entries, rounded up to a power of two
+     */
+    public EvaluationCache(int capacity) {
+        if (capacity < 2 * WAYS || capacity > 1 << 28) {
+            throw new IllegalArgumentException("Capacity must be between " + 2 * WAYS + " and 2^28: " + capacity);
+        }
+        int sets = Integer.highestOneBit(capacity - 1) * 2 / WAYS;
+        entries = new AtomicLongArray(sets * WAYS * ENTRY_LONGS);
+        recentWays = new byte[sets];
+        setShift = 64 - Integer.numberOfTrailingZeros(sets);
+    }
+
+    /**
+     * Looks an evaluation up.
+     *
+     * @param key key
+     * @return value, or NaN if not cached
+     */
+    public double get(long key) {
+        if (key != 0) {
+            int set = set(key);
+
+            for (int way = 0; way < WAYS; way++) {
+                int index = (set * WAYS + way) * ENTRY_LONGS;
+                long value = entries.get(index + 1);
+
+                if ((entries.get(index) ^ value) == key) {
+                    recentWays[set] = (byte) way;
+                    hits.increment();
+                    return Double.longBitsToDouble(value);
+                }
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Stores an evaluation, replacing the key's entry, else an empty entry, else the least recently used one.
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void put(long key, double value) {
+        if (key == 0) {
+            return;
+        }
+        int set = set(key);
+        int target = -1;
+
+        for (int way = 0; way < WAYS && target == -1; way++) {
+            int index = (set * WAYS + way) * ENTRY_LONGS;
+            long check = entries.get(index);
+            long bits = entries.get(index + 1);
+
+            if ((check ^ bits) == key || (check == 0 && bits == 0)) {
+                target = way;
+            }
+        }
+
+        if (target == -1) {
+            target = 1 - recentWays[set];
+            evictions.increment();
+        }
+        int index = (set * WAYS + target) * ENTRY_LONGS;
+        long bits = Double.doubleToRawLongBits(value);
+        entries.set(index, key ^ bits);
+        entries.set(index + 1, bits);
+        recentWays[set] = (byte) target;
+    }
+
+    private int set(long key) {
+        return (int) (GameRandom.mix(key) >>> setShift);
+    }
+
+    /**
+     * Empties the cache, while no other thread uses it.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, 0);
+        }
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters.
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Exports the hit, miss and eviction counters as {@code game2048_eval_cache_*_total}, replacing those of any
+     * cache exported before.
+     *
+     * @param telemetry telemetry to export with
+     */
+    public void exportCounters(Telemetry telemetry) {
+        telemetry.registerCounter("game2048_eval_cache_hits_total", "Evaluation cache lookups found.", hits::sum);
+        telemetry.registerCounter("game2048_eval_cache_misses_total", "Evaluation cache lookups not found.",
+                misses::sum);
+        telemetry.registerCounter("game2048_eval_cache_evictions_total", "Evaluation cache entries evicted.",
+                evictions::sum);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the fraction of lookups found.
+     *
+     * @return hit rate, 0 before any lookup
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public int getCapacity() {
+        return entries.length() / ENTRY_LONGS;
+    }
+
+    /**
+     * Gets the heap used by the entries.
+     *
+     * @return size in bytes
+     */
+    public long getSize() {
+        return 8L * entries.length() + recentWays.length;
+    }
+}
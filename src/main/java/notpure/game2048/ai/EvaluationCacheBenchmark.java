@@ -0,0 +1,115 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks an {@link EvaluationCache} under concurrent readers and writers, then measures what it saves an
+ * {@link ExpectimaxPlayer}.
+ * <p>
+ * Usage: {@code EvaluationCacheBenchmark [threads] [capacity] [games] [depth]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class EvaluationCacheBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 20;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        stress(threads);
+
+        // Playing the same games with and without the cache
+        BoardRules rules = new BoardRules(4, 4);
+        EvaluationCache cache = new EvaluationCache(capacity);
+        play("Without cache", new ExpectimaxPlayer(rules, null, null, depth), rules, games);
+        play("With cache", new ExpectimaxPlayer(rules, null, cache, depth), rules, games);
+        System.out.printf("Cache of %d entries (%d bytes): %d hits, %d misses, %d evictions, hit rate %.1f%%%n",
+                cache.getCapacity(), cache.getSize(), cache.getHits(), cache.getMisses(), cache.getEvictions(),
+                100 * cache.getHitRate());
+    }
+
+    /**
+     * Hammers a small cache from many threads, every key having one known value, and counts the wrong values read.
+     */
+    private static void stress(int threads) throws InterruptedException {
+        final EvaluationCache cache = new EvaluationCache(1 << 12);
+        final AtomicLong operations = new AtomicLong();
+        final AtomicLong wrong = new AtomicLong();
+        final long end = System.nanoTime() + 2_000_000_000L;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final GameRandom random = new GameRandom(t);
+            workers[t] = new Thread(() -> {
+                long count = 0;
+
+                while (System.nanoTime() < end) {
+                    for (int i = 0; i < 1024; i++, count++) {
+                        long id = random.nextInt(1 << 14);
+                        long key = GameRandom.mix(id);
+                        double value = cache.get(key);
+
+                        if (Double.isNaN(value)) {
+                            cache.put(key, id * 0.5);
+                        } else if (value != id * 0.5) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                }
+                operations.addAndGet(count);
+            });
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.printf("Stress, %d threads: %.1fM lookups/s, %d wrong values, hit rate %.1f%%, %d evictions%n",
+                threads, operations.get() / 2e6, wrong.get(), 100 * cache.getHitRate(), cache.getEvictions());
+    }
+
+    private static void play(String name, Player player, BoardRules rules, int games) {
+        GameRandom random = new GameRandom(0);
+        long totalScore = 0;
+        long totalMoves = 0;
+        long start = System.nanoTime();
+
+        for (int game = 0; game < games; game++) {
+            random.setSeed(GameRandom.mix(game));
+            long board = rules.newGame(random);
+            int dir;
+
+            while ((dir = player.chooseMove(board)) != Player.NO_MOVE) {
+                totalScore += rules.moveScore(board, dir);
+                board = rules.performMove(board, dir, random);
+                totalMoves++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d moves in %.1fs (%.2fms/move), mean score %.0f%n", name, totalMoves, seconds,
+                1000 * seconds / totalMoves, (double) totalScore / games);
+    }
+}
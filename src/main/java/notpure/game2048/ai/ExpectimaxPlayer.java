@@ -0,0 +1,188 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.BoardSymmetry;
+import notpure.game2048.model.board.GameRandom;
+
+/**
+ * Chooses the move with the highest expected score, searching a fixed amount of moves ahead and averaging
+ * over the inserted tiles. Boards found in a {@link Tablebase} are played and valued exactly instead, and the
+ * values searched may be kept in an {@link EvaluationCache}, keyed by canonical board and depth.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class ExpectimaxPlayer implements Player {
+
+    /**
+     * A rough estimate of the score still to come per free cell, valuing the boards the search stops at.
+     */
+    private static final double FREE_CELL_VALUE = 16;
+
+    private final BoardRules rules;
+    /**
+     * Exact values, or null.
+     */
+    private final Tablebase tablebase;
+    /**
+     * Searched values, or null.
+     */
+    private final EvaluationCache cache;
+    private final BoardSymmetry symmetry;
+    private final int depth;
+
+    /**
+     * Constructs a new ExpectimaxPlayer.
+     *
+     * @param rules     rules of the game
+     * @param tablebase exact values for boards of the same size, not capped, or null
+     * @param depth     amount of moves to look ahead, at least 1
+     */
+    public ExpectimaxPlayer(BoardRules rules, Tablebase tablebase, int depth) {
+        this(rules, tablebase, null, depth);
+    }
+
+    /**
+     * Constructs a new ExpectimaxPlayer.
+     *
+     * @param rules     rules of the game
+     * @param tablebase exact values for boards of the same size, not capped, or null
+     * @param cache     cache of searched values, which may be shared with other players of the same rules, or null
+     * @param depth     amount of moves to look ahead, at least 1
+     */
+    public ExpectimaxPlayer(BoardRules rules, Tablebase tablebase, EvaluationCache cache, int depth) {
+        if (tablebase != null && !tablebase.covers(rules)) {
+            throw new IllegalArgumentException("Tablebase is for " + tablebase.getRows() + "x" + tablebase.getCols()
+                    + " grids");
+        }
+
+        if (tablebase != null && tablebase.isCapped()) {
+            throw new IllegalArgumentException("Tablebase ends games at " + (1 << tablebase.getMaxExponent())
+                    + ", so its values and moves do not hold for the real game");
+        }
+
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        }
+        this.rules = rules;
+        this.tablebase = tablebase;
+        this.cache = cache;
+        this.depth = depth;
+        symmetry = new BoardSymmetry(rules);
+    }
+
+    @Override
+    public int chooseMove(long board) {
+        if (tablebase != null) {
+            int move = tablebase.getBestMove(board);
+
+            if (move != NO_MOVE) {
+                return move;
+            }
+        }
+
+        if (!rules.hasMoves(board)) {
+            return NO_MOVE;
+        }
+        double best = -1;
+        int bestMove = NO_MOVE;
+
+        for (int dir = 0; dir < 4; dir++) {
+            if (!rules.canMove(board, dir)) {
+                continue;
+            }
+            double value = rules.moveScore(board, dir) + expectation(rules.move(board, dir), depth - 1);
+
+            if (value > best) {
+                best = value;
+                bestMove = dir;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Values a board, before the next move.
+     *
+     * @param board board
+     * @param depth moves left to search
+     * @return expected future score
+     */
+    private double value(long board, int depth) {
+        if (tablebase != null) {
+            float exact = tablebase.getValue(board);
+
+            if (!Float.isNaN(exact)) {
+                return exact;
+            }
+        }
+
+        if (!rules.hasMoves(board)) {
+            return 0;
+        }
+
+        if (depth == 0) {
+            return rules.emptyCells(board) * FREE_CELL_VALUE;
+        }
+        long key = 0;
+
+        if (cache != null) {
+            key = GameRandom.mix(symmetry.canonical(board)) + depth;
+            double cached = cache.get(key);
+
+            if (!Double.isNaN(cached)) {
+                return cached;
+            }
+        }
+        double best = 0;
+
+        for (int dir = 0; dir < 4; dir++) {
+            if (rules.canMove(board, dir)) {
+                best = Math.max(best, rules.moveScore(board, dir) + expectation(rules.move(board, dir), depth - 1));
+            }
+        }
+
+        if (cache != null) {
+            cache.put(key, best);
+        }
+        return best;
+    }
+
+    /**
+     * Values a moved board, averaging over the tiles which may be inserted.
+     *
+     * @param moved board with at least one free cell
+     * @param depth moves left to search
+     * @return expected future score
+     */
+    private double expectation(long moved, int depth) {
+        double total = 0;
+        int free = 0;
+
+        for (int cell = 0; cell < rules.getCells(); cell++) {
+            if (BoardRules.getExponent(moved, cell) == 0) {
+                total += BoardRules.TWO_PROBABILITY * value(BoardRules.setExponent(moved, cell, 1), depth)
+                        + (1 - BoardRules.TWO_PROBABILITY) * value(BoardRules.setExponent(moved, cell, 2), depth);
+                free++;
+            }
+        }
+        return total / free;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+
+/**
+ * Plays games with a {@link MonteCarloPlayer} and reports the playouts per second along with the scores reached.
+ * <p>
+ * Usage: {@code MonteCarloBenchmark [threads] [playouts per move] [budget millis per move] [games]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class MonteCarloBenchmark {
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int playouts = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long budgetNanos = args.length > 2 ? Long.parseLong(args[2]) * 1_000_000 : 0;
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        BoardRules rules = new BoardRules(4, 4);
+        GameRandom random = new GameRandom(0);
+        long totalMoves = 0;
+        long totalScore = 0;
+        long start = System.nanoTime();
+
+        try (MonteCarloPlayer player = new MonteCarloPlayer(rules, playouts, budgetNanos, threads, 1)) {
+            for (int game = 0; game < games; game++) {
+                random.setSeed(GameRandom.mix(game));
+                long board = rules.newGame(random);
+                int score = 0;
+                int moves = 0;
+                int dir;
+
+                while ((dir = player.chooseMove(board)) != Player.NO_MOVE) {
+                    score += rules.moveScore(board, dir);
+                    board = rules.performMove(board, dir, random);
+                    moves++;
+                }
+                totalMoves += moves;
+                totalScore += score;
+                System.out.printf("Game %d: score %d, max tile %d, %d moves%n", game + 1, score,
+                        rules.maxValue(board), moves);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d threads, %d playouts per move: %.0f playouts/s, %.1f moves/s, mean score %.0f%n",
+                    threads, playouts, player.getPlayoutCount() / seconds, totalMoves / seconds,
+                    (double) totalScore / games);
+        }
+    }
+}
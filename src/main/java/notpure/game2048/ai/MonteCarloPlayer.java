@@ -0,0 +1,246 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+
+import java.io.Closeable;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the move with the best mean score over random playouts: games played to the end with uniformly
+ * random moves, starting with each candidate move.
+ * <p>
+ * Playouts run on the calling thread and on helper threads kept for the player's lifetime. Boards are packed
+ * longs and every thread has its own generator and score totals, so playouts allocate nothing. Playouts are
+ * handed out in small batches from a shared counter, cycling through the candidate moves, until the amount
+ * per move is reached or the time budget runs out.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class MonteCarloPlayer implements Player, Closeable {
+
+    /**
+     * The amount of playouts claimed at a time, the time budget being checked between batches.
+     */
+    private static final int BATCH_SIZE = 8;
+
+    private final BoardRules rules;
+    private final int playoutsPerMove;
+    private final long budgetNanos;
+    private final Worker[] workers;
+    /**
+     * Releases the helpers into a search and waits for them to finish it, every search taking two phases.
+     */
+    private final Phaser phaser;
+    private final AtomicInteger nextPlayout = new AtomicInteger();
+    private final int[] candidates = new int[4];
+    private final long[] movedBoards = new long[4];
+    private final int[] moveScores = new int[4];
+    /**
+     * The search being run, written before the helpers are released.
+     */
+    private int candidateCount;
+    private int playoutLimit;
+    private long deadline;
+    private volatile boolean closed;
+    private long playoutCount;
+
+    /**
+     * Constructs a new MonteCarloPlayer, starting its helper threads.
+     *
+     * @param rules           rules of the game
+     * @param playoutsPerMove playouts per candidate move
+     * @param budgetNanos     time allowed per move in nanoseconds, 0 for no limit
+     * @param threads         threads to run playouts on, including the calling thread
+     * @param seed            seed of the playouts
+     */
+    public MonteCarloPlayer(BoardRules rules, int playoutsPerMove, long budgetNanos, int threads, long seed) {
+        this.rules = rules;
+        this.playoutsPerMove = playoutsPerMove;
+        this.budgetNanos = budgetNanos;
+        workers = new Worker[threads];
+        phaser = new Phaser(threads);
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(GameRandom.mix(seed + i));
+        }
+
+        for (int i = 1; i < threads; i++) {
+            Thread thread = new Thread(workers[i]::runHelper, "monte-carlo-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public int chooseMove(long board) {
+        if (closed) {
+            throw new IllegalStateException("Player is closed");
+        }
+        candidateCount = 0;
+
+        for (int dir = 0; dir < 4; dir++) {
+            if (rules.canMove(board, dir)) {
+                candidates[candidateCount] = dir;
+                movedBoards[candidateCount] = rules.move(board, dir);
+                moveScores[candidateCount++] = rules.moveScore(board, dir);
+            }
+        }
+
+        if (candidateCount <= 1) {
+            return candidateCount == 0 ? NO_MOVE : candidates[0];
+        }
+
+        // Running the playouts on all threads
+        playoutLimit = playoutsPerMove * candidateCount;
+        deadline = budgetNanos > 0 ? System.nanoTime() + budgetNanos : Long.MAX_VALUE;
+        nextPlayout.set(0);
+
+        for (Worker worker : workers) {
+            worker.clear();
+        }
+        phaser.arriveAndAwaitAdvance();
+        workers[0].playOut();
+        phaser.arriveAndAwaitAdvance();
+
+        // Picking the best mean score
+        int bestMove = candidates[0];
+        double bestMean = -1;
+
+        for (int i = 0; i < candidateCount; i++) {
+            long total = 0;
+            long count = 0;
+
+            for (Worker worker : workers) {
+                total += worker.totals[i];
+                count += worker.counts[i];
+                playoutCount += worker.counts[i];
+            }
+            double mean = count == 0 ? 0 : (double) total / count + moveScores[i];
+
+            if (mean > bestMean) {
+                bestMean = mean;
+                bestMove = candidates[i];
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Gets the amount of playouts run so far.
+     *
+     * @return playout count
+     */
+    public long getPlayoutCount() {
+        return playoutCount;
+    }
+
+    /**
+     * Stops the helper threads.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            phaser.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * The playout state of one thread.
+     */
+    private final class Worker {
+
+        private final GameRandom random;
+        /**
+         * The score total and playout count of each candidate move.
+         */
+        private final long[] totals = new long[4];
+        private final long[] counts = new long[4];
+
+        private Worker(long seed) {
+            random = new GameRandom(seed);
+        }
+
+        private void clear() {
+            for (int i = 0; i < 4; i++) {
+                totals[i] = 0;
+                counts[i] = 0;
+            }
+        }
+
+        private void runHelper() {
+            while (true) {
+                phaser.arriveAndAwaitAdvance();
+
+                if (closed) {
+                    phaser.arriveAndDeregister();
+                    return;
+                }
+                playOut();
+                phaser.arriveAndAwaitAdvance();
+            }
+        }
+
+        /**
+         * Claims and runs batches of playouts until the search is done.
+         */
+        private void playOut() {
+            int start;
+
+            while ((start = nextPlayout.getAndAdd(BATCH_SIZE)) < playoutLimit) {
+                // Every move gets a playout before the budget is checked
+                if (start >= candidateCount && System.nanoTime() > deadline) {
+                    break;
+                }
+
+                for (int i = start; i < Math.min(start + BATCH_SIZE, playoutLimit); i++) {
+                    int candidate = i % candidateCount;
+                    totals[candidate] += playOut(movedBoards[candidate]);
+                    counts[candidate]++;
+                }
+            }
+        }
+
+        /**
+         * Plays random moves until the game is over.
+         *
+         * @param moved board after the candidate move, before the tile is inserted
+         * @return score gained after the candidate move
+         */
+        private int playOut(long moved) {
+            long board = rules.spawn(moved, random);
+            int score = 0;
+
+            while (rules.hasMoves(board)) {
+                int dir = random.nextInt(4);
+
+                if (!rules.canMove(board, dir)) {
+                    continue;
+                }
+                score += rules.moveScore(board, dir);
+                board = rules.spawn(rules.move(board, dir), random);
+            }
+            return score;
+        }
+    }
+}
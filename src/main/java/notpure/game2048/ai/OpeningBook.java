@@ -0,0 +1,198 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.BoardSymmetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped book of the moves played from the opening boards of recorded games, as written by
+ * {@link OpeningBookBuilder}. Each entry is a canonical board ({@link BoardSymmetry}) with the move played most
+ * often from it, how often the board was seen and how often that move was played.
+ * <p>
+ * File layout, big-endian: a {@value #HEADER_SIZE} byte header ({@code magic, version, rows, cols, entries,
+ * plies, games, min visits}, all i32), the i64 boards in ascending order, then the i32 visits, the i32 visits
+ * of the best move and the i8 best move of each entry. A book is small, so boards are found by binary search.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class OpeningBook {
+
+    static final int MAGIC = 0x424F4F4B;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final int cols;
+    private final int entryCount;
+    private final int plies;
+    private final int gameCount;
+    private final int visitsOffset;
+    private final int moveVisitsOffset;
+    private final int movesOffset;
+    private final BoardSymmetry symmetry;
+
+    private OpeningBook(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a version " + VERSION + " opening book");
+        }
+        this.buffer = buffer;
+        rows = buffer.getInt(8);
+        cols = buffer.getInt(12);
+        entryCount = buffer.getInt(16);
+        plies = buffer.getInt(20);
+        gameCount = buffer.getInt(24);
+        visitsOffset = HEADER_SIZE + 8 * entryCount;
+        moveVisitsOffset = visitsOffset + 4 * entryCount;
+        movesOffset = moveVisitsOffset + 4 * entryCount;
+
+        if (movesOffset + entryCount != buffer.capacity()) {
+            throw new IOException("Opening book size does not match its header");
+        }
+        symmetry = new BoardSymmetry(new BoardRules(rows, cols));
+    }
+
+    /**
+     * Maps an opening book file into memory.
+     *
+     * @param file file
+     * @return opening book
+     * @throws IOException if the file cannot be read or is not an opening book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Opening book too large to map: " + file);
+            }
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Finds the entry of a canonical board.
+     *
+     * @param board canonical board
+     * @return entry, or -1 if the board is not in the book
+     */
+    private int find(long board) {
+        int low = 0;
+        int high = entryCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = buffer.getLong(HEADER_SIZE + 8 * mid);
+
+            if (key < board) {
+                low = mid + 1;
+            } else if (key > board) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the move played most often from a board.
+     *
+     * @param board board
+     * @return {@link notpure.game2048.model.tile.TileGrid.Direction} ordinal, or {@link Player#NO_MOVE} if the
+     * board is not in the book
+     */
+    public int getBestMove(long board) {
+        int s = symmetry.canonicalSymmetry(board);
+        int entry = find(symmetry.apply(board, s));
+        return entry == -1 ? Player.NO_MOVE : symmetry.mapMove(buffer.get(movesOffset + entry), symmetry.inverse(s));
+    }
+
+    /**
+     * Gets how often a board was seen in the recorded games.
+     *
+     * @param board board
+     * @return visits, 0 if the board is not in the book
+     */
+    public int getVisits(long board) {
+        int entry = find(symmetry.canonical(board));
+        return entry == -1 ? 0 : buffer.getInt(visitsOffset + 4 * entry);
+    }
+
+    /**
+     * Gets how often the best move was played from a board.
+     *
+     * @param board board
+     * @return visits of the best move, 0 if the board is not in the book
+     */
+    public int getBestMoveVisits(long board) {
+        int entry = find(symmetry.canonical(board));
+        return entry == -1 ? 0 : buffer.getInt(moveVisitsOffset + 4 * entry);
+    }
+
+    /**
+     * Checks if this book is for boards of the given rules.
+     *
+     * @param rules rules
+     * @return whether or not the grid sizes match
+     */
+    public boolean covers(BoardRules rules) {
+        return rules.getRows() == rows && rules.getCols() == cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Gets the amount of moves recorded from the start of each game.
+     *
+     * @return plies
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * Gets the size of the book in bytes.
+     *
+     * @return size
+     */
+    public int getSize() {
+        return buffer.capacity();
+    }
+}
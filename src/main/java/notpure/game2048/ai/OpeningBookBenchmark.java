@@ -0,0 +1,108 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Plays games with an {@link ExpectimaxPlayer} consulting an {@link OpeningBook}, and reports the book hit rate
+ * and the time saved per game: every board found in the book is also searched, to time the search it replaces.
+ * The depth should be the one the book was built with.
+ * <p>
+ * Usage: {@code OpeningBookBenchmark <book> [games] [depth]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class OpeningBookBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: OpeningBookBenchmark <book> [games] [depth]");
+            System.exit(1);
+        }
+        OpeningBook book = OpeningBook.open(Paths.get(args[0]));
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        BoardRules rules = new BoardRules(4, 4);
+        ExpectimaxPlayer searcher = new ExpectimaxPlayer(rules, null, depth);
+        System.out.printf("Book: %d boards from %d games of %d plies, %d bytes%n", book.getEntryCount(),
+                book.getGameCount(), book.getPlies(), book.getSize());
+
+        // Warming up, so neither side pays for compilation
+        play(rules, book, searcher, -1);
+
+        long searchNanos = 0;
+        long bookNanos = 0;
+        long hits = 0;
+        long moves = 0;
+
+        for (int game = 0; game < games; game++) {
+            long[] result = play(rules, book, searcher, game);
+            hits += result[0];
+            moves += result[1];
+            searchNanos += result[2];
+            bookNanos += result[3];
+        }
+        System.out.printf("Hit rate %.2f%% of all moves, %.1f%% of the first %d (%.1f hits per game)%n",
+                100.0 * hits / moves, 100.0 * hits / ((long) games * book.getPlies()), book.getPlies(),
+                (double) hits / games);
+        System.out.printf("Think time per game on the hits: %.2fms searching, %.3fms reading the book,"
+                        + " %.2fms saved (%.1fus per hit)%n", searchNanos / 1e6 / games, bookNanos / 1e6 / games,
+                (searchNanos - bookNanos) / 1e6 / games, (searchNanos - bookNanos) / 1e3 / Math.max(1, hits));
+    }
+
+    /**
+     * Plays a game with the book, also timing the search for every board found in the book.
+     *
+     * @return the hits, the moves, and the nanoseconds spent searching and reading the book on the hits
+     */
+    private static long[] play(BoardRules rules, OpeningBook book, Player searcher, long seed) {
+        GameRandom random = new GameRandom(GameRandom.mix(seed));
+        long board = rules.newGame(random);
+        long[] result = new long[4];
+
+        while (true) {
+            long start = System.nanoTime();
+            int dir = book.getBestMove(board);
+            long bookNanos = System.nanoTime() - start;
+
+            // Only playing book moves which can be made, as the BookPlayer does
+            if (dir != Player.NO_MOVE && rules.canMove(board, dir)) {
+                start = System.nanoTime();
+                searcher.chooseMove(board);
+                result[2] += System.nanoTime() - start;
+                result[3] += bookNanos;
+                result[0]++;
+            } else {
+                dir = searcher.chooseMove(board);
+            }
+
+            if (dir == Player.NO_MOVE) {
+                return result;
+            }
+            board = rules.performMove(board, dir, random);
+            result[1]++;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.BoardSymmetry;
+import notpure.game2048.model.board.GameRandom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds an {@link OpeningBook} for 4x4 grids by self-play: an {@link ExpectimaxPlayer} plays the opening moves
+ * of many games, and every canonical board seen often enough is stored with the move played most often from it.
+ * <p>
+ * Games are dealt from seeds {@value #SEED_BASE} onwards, so games on the small seeds used by
+ * {@link Tournament} and {@link OpeningBookBenchmark} are not replays of the recorded ones.
+ * <p>
+ * Usage: {@code OpeningBookBuilder <file> [games] [depth] [plies] [min visits] [threads]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class OpeningBookBuilder {
+
+    static final long SEED_BASE = 1L << 32;
+    private static final int DEFAULT_GAMES = 10000;
+    private static final int DEFAULT_DEPTH = 2;
+    private static final int DEFAULT_PLIES = 20;
+    private static final int DEFAULT_MIN_VISITS = 2;
+
+    private final BoardRules rules = new BoardRules(4, 4);
+    private final BoardSymmetry symmetry = new BoardSymmetry(rules);
+    private final int depth;
+    private final int plies;
+    /**
+     * The visits of each canonical board, then the visits of each move from it.
+     */
+    private final Map<Long, int[]> statistics = new HashMap<>();
+    private int gameCount;
+
+    /**
+     * Constructs a new OpeningBookBuilder.
+     *
+     * @param depth moves the player looks ahead
+     * @param plies moves recorded from the start of each game
+     */
+    public OpeningBookBuilder(int depth, int plies) {
+        this.depth = depth;
+        this.plies = plies;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: OpeningBookBuilder <file> [games] [depth] [plies] [min visits] [threads]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_GAMES;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+        int plies = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_PLIES;
+        int minVisits = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_MIN_VISITS;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(depth, plies);
+        long start = System.nanoTime();
+        builder.record(games, threads);
+        int entries = builder.write(file, minVisits);
+        System.out.printf("Recorded %d games of expectimax:%d, %d plies each: %d boards, %d seen at least %d times"
+                        + " (%d bytes), %.1fs%n", games, depth, plies, builder.statistics.size(), entries,
+                minVisits, OpeningBook.open(file).getSize(), (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Plays the opening of games in parallel and records their boards and moves.
+     *
+     * @param games   amount of games
+     * @param threads games played at once
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public void record(int games, int threads) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<Map<Long, int[]>>> futures = new ArrayList<>();
+
+        try {
+            for (int worker = 0; worker < threads; worker++) {
+                final int first = worker;
+                futures.add(workers.submit(() -> {
+                    Map<Long, int[]> local = new HashMap<>();
+                    ExpectimaxPlayer player = new ExpectimaxPlayer(rules, null, depth);
+
+                    for (int game = first; game < games; game += threads) {
+                        playOpening(player, SEED_BASE + game, local);
+                    }
+                    return local;
+                }));
+            }
+
+            for (Future<Map<Long, int[]>> future : futures) {
+                merge(future.get());
+            }
+            gameCount += games;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Recording failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void playOpening(Player player, long seed, Map<Long, int[]> statistics) {
+        GameRandom random = new GameRandom(GameRandom.mix(seed));
+        long board = rules.newGame(random);
+
+        for (int ply = 0; ply < plies; ply++) {
+            int dir = player.chooseMove(board);
+
+            if (dir == Player.NO_MOVE) {
+                return;
+            }
+            int s = symmetry.canonicalSymmetry(board);
+            int[] counts = statistics.computeIfAbsent(symmetry.apply(board, s), key -> new int[5]);
+            counts[0]++;
+            counts[1 + symmetry.mapMove(dir, s)]++;
+            board = rules.performMove(board, dir, random);
+        }
+    }
+
+    private void merge(Map<Long, int[]> other) {
+        for (Map.Entry<Long, int[]> entry : other.entrySet()) {
+            int[] counts = statistics.computeIfAbsent(entry.getKey(), key -> new int[5]);
+
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += entry.getValue()[i];
+            }
+        }
+    }
+
+    /**
+     * Writes the boards seen often enough to a book.
+     *
+     * @param file      destination
+     * @param minVisits times a board must have been seen
+     * @return amount of entries written
+     * @throws IOException if the file cannot be written
+     */
+    public int write(Path file, int minVisits) throws IOException {
+        long[] boards = new long[statistics.size()];
+        int count = 0;
+
+        for (Map.Entry<Long, int[]> entry : statistics.entrySet()) {
+            if (entry.getValue()[0] >= minVisits) {
+                boards[count++] = entry.getKey();
+            }
+        }
+        Arrays.sort(boards, 0, count);
+        ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + 17 * count);
+        buffer.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt(rules.getRows()).putInt(rules.getCols())
+                .putInt(count).putInt(plies).putInt(gameCount).putInt(minVisits);
+
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(boards[i]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(statistics.get(boards[i])[0]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(statistics.get(boards[i])[1 + bestMove(statistics.get(boards[i]))]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) bestMove(statistics.get(boards[i])));
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the move played most often.
+     *
+     * @param counts visits, then the visits of each move
+     * @return direction
+     */
+    private static int bestMove(int[] counts) {
+        int best = 0;
+
+        for (int dir = 1; dir < 4; dir++) {
+            if (counts[1 + dir] > counts[1 + best]) {
+                best = dir;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+/**
+ * Chooses moves for a game on a packed {@link notpure.game2048.model.board.BoardRules} board.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public interface Player {
+
+    /**
+     * Returned by {@link #chooseMove(long)} when no move can be made.
+     */
+    int NO_MOVE = -1;
+
+    /**
+     * Chooses the next move.
+     *
+     * @param board board
+     * @return {@link notpure.game2048.model.tile.TileGrid.Direction} ordinal, or {@link #NO_MOVE}
+     */
+    int chooseMove(long board);
+}
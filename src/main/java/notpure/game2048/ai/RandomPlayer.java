@@ -0,0 +1,57 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+
+/**
+ * Chooses uniformly among the moves which can be made, as a baseline for other players.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class RandomPlayer implements Player {
+
+    private final BoardRules rules;
+    private final GameRandom random;
+    private final int[] candidates = new int[4];
+
+    /**
+     * Constructs a new RandomPlayer.
+     *
+     * @param rules rules of the game
+     * @param seed  seed of the moves
+     */
+    public RandomPlayer(BoardRules rules, long seed) {
+        this.rules = rules;
+        random = new GameRandom(seed);
+    }
+
+    @Override
+    public int chooseMove(long board) {
+        int count = 0;
+
+        for (int dir = 0; dir < 4; dir++) {
+            if (rules.canMove(board, dir)) {
+                candidates[count++] = dir;
+            }
+        }
+        return count == 0 ? NO_MOVE : candidates[random.nextInt(count)];
+    }
+}
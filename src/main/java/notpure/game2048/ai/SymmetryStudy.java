@@ -0,0 +1,157 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.BoardSymmetry;
+import notpure.game2048.model.board.GameRandom;
+
+import java.util.Arrays;
+
+/**
+ * Measures what keying caches by canonical board saves, on the boards of games played by an
+ * {@link ExpectimaxPlayer}: the distinct boards stored with and without symmetry, and the hit rates of a
+ * direct-mapped cache looked up with the boards a one move search visits from every position.
+ * <p>
+ * Usage: {@code SymmetryStudy [games] [cache bits]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class SymmetryStudy {
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int cacheBits = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        BoardRules rules = new BoardRules(4, 4);
+        BoardSymmetry symmetry = new BoardSymmetry(rules);
+        ExpectimaxPlayer player = new ExpectimaxPlayer(rules, null, 2);
+        GameRandom random = new GameRandom(0);
+
+        // Playing the games, collecting every position and the boards searched from it
+        LongList positions = new LongList();
+        LongList searched = new LongList();
+
+        for (int game = 0; game < games; game++) {
+            random.setSeed(GameRandom.mix(game));
+            long board = rules.newGame(random);
+            int dir;
+
+            while ((dir = player.chooseMove(board)) != Player.NO_MOVE) {
+                positions.add(board);
+
+                for (int candidate = 0; candidate < 4; candidate++) {
+                    long moved = rules.move(board, candidate);
+
+                    for (int cell = 0; cell < rules.getCells(); cell++) {
+                        if (BoardRules.getExponent(moved, cell) == 0) {
+                            searched.add(BoardRules.setExponent(moved, cell, 1));
+                            searched.add(BoardRules.setExponent(moved, cell, 2));
+                        }
+                    }
+                }
+                board = rules.performMove(board, dir, random);
+            }
+        }
+
+        // Canonicalising, timed after a warm-up round
+        long[] canonicalSearched = new long[searched.size];
+        double canonicalNanos = 0;
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+
+            for (int i = 0; i < searched.size; i++) {
+                canonicalSearched[i] = symmetry.canonical(searched.data[i]);
+            }
+            canonicalNanos = (double) (System.nanoTime() - start) / searched.size;
+        }
+        long[] canonicalPositions = new long[positions.size];
+
+        for (int i = 0; i < positions.size; i++) {
+            canonicalPositions[i] = symmetry.canonical(positions.data[i]);
+        }
+        long[] rawSearched = Arrays.copyOf(searched.data, searched.size);
+        long[] rawPositions = Arrays.copyOf(positions.data, positions.size);
+
+        System.out.printf("%d games, %d positions, %d searched boards, canonicalising %.1fns/board%n",
+                games, positions.size, searched.size, canonicalNanos);
+        report("Positions", rawPositions, canonicalPositions);
+        report("Searched boards", rawSearched, canonicalSearched);
+        System.out.printf("Direct-mapped cache of %d entries: hit rate %.1f%% raw, %.1f%% canonical%n",
+                1 << cacheBits, 100 * hitRate(rawSearched, cacheBits), 100 * hitRate(canonicalSearched, cacheBits));
+    }
+
+    private static void report(String name, long[] raw, long[] canonical) {
+        int distinct = distinct(raw.clone());
+        int classes = distinct(canonical.clone());
+        System.out.printf("%s: %d distinct boards, %d canonical (%.2fx smaller, %.1f%% memory saved), "
+                        + "unbounded cache hit rate %.1f%% raw, %.1f%% canonical%n",
+                name, distinct, classes, (double) distinct / classes, 100.0 * (distinct - classes) / distinct,
+                100.0 * (raw.length - distinct) / raw.length, 100.0 * (raw.length - classes) / raw.length);
+    }
+
+    private static int distinct(long[] boards) {
+        Arrays.sort(boards);
+        int count = 0;
+
+        for (int i = 0; i < boards.length; i++) {
+            if (i == 0 || boards[i] != boards[i - 1]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Replays lookups through a direct-mapped cache, inserting every miss.
+     *
+     * @return hit rate
+     */
+    private static double hitRate(long[] lookups, int bits) {
+        long[] cache = new long[1 << bits];
+        long hits = 0;
+
+        for (long board : lookups) {
+            int slot = (int) (GameRandom.mix(board) >>> (64 - bits));
+
+            if (cache[slot] == board) {
+                hits++;
+            } else {
+                cache[slot] = board;
+            }
+        }
+        return (double) hits / lookups.length;
+    }
+
+    /**
+     * A growable list of boards.
+     */
+    private static final class LongList {
+
+        private long[] data = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.BoardSymmetry;
+import notpure.game2048.model.board.GameRandom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped table of the exact expected future score and best move of every reachable board of a small
+ * grid, as written by {@link TablebaseGenerator}.
+ * <p>
+ * Boards are found with a perfect hash (compress, hash and displace): a board's bucket gives a displacement,
+ * which together with the board gives its slot, so a lookup reads one displacement and one key, and never
+ * probes. The key is compared to reject boards not in the table. Only canonical boards are stored, one per
+ * class of boards equivalent by {@link BoardSymmetry}, the best move being mapped back to the board looked up.
+ * <p>
+ * File layout, big-endian: a {@value #HEADER_SIZE} byte header ({@code magic, version, rows, cols, states,
+ * buckets, slots, max exponent}, all i32), the i32 displacement of each bucket padded to 8 bytes, then the
+ * i64 board, f32 value and i8 best move of each slot. Empty slots hold board 0.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class Tablebase {
+
+    static final int MAGIC = 0x32303438;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    private static final long DISPLACEMENT_STEP = 0x9E3779B97F4A7C15L;
+
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final int cols;
+    private final int stateCount;
+    private final int bucketCount;
+    private final int slotCount;
+    private final int maxExponent;
+    private final int keysOffset;
+    private final int valuesOffset;
+    private final int movesOffset;
+    private final BoardSymmetry symmetry;
+
+    private Tablebase(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a version " + VERSION + " tablebase");
+        }
+        this.buffer = buffer;
+        rows = buffer.getInt(8);
+        cols = buffer.getInt(12);
+        stateCount = buffer.getInt(16);
+        bucketCount = buffer.getInt(20);
+        slotCount = buffer.getInt(24);
+        maxExponent = buffer.getInt(28);
+        keysOffset = keysOffset(bucketCount);
+        valuesOffset = keysOffset + 8 * slotCount;
+        movesOffset = valuesOffset + 4 * slotCount;
+        symmetry = new BoardSymmetry(new BoardRules(rows, cols));
+
+        if (movesOffset + slotCount != buffer.capacity()) {
+            throw new IOException("Tablebase size does not match its header");
+        }
+    }
+
+    /**
+     * Maps a tablebase file into memory.
+     *
+     * @param file file
+     * @return tablebase
+     * @throws IOException if the file cannot be read or is not a tablebase
+     */
+    public static Tablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Tablebase too large to map: " + file);
+            }
+            return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Finds the slot of a canonical board.
+     *
+     * @param board canonical board
+     * @return slot, or -1 if the board is not in the table
+     */
+    private int find(long board) {
+        if (board == 0) {
+            return -1;
+        }
+        int displacement = buffer.getInt(HEADER_SIZE + 4 * bucket(board, bucketCount));
+        int slot = slot(board, displacement, slotCount);
+        return buffer.getLong(keysOffset + 8 * slot) == board ? slot : -1;
+    }
+
+    /**
+     * Checks if a board is in the table.
+     *
+     * @param board board
+     * @return whether or not the board is in the table
+     */
+    public boolean contains(long board) {
+        return find(symmetry.canonical(board)) != -1;
+    }
+
+    /**
+     * Gets the expected score still to be gained from a board with best play.
+     *
+     * @param board board
+     * @return expected future score, or NaN if the board is not in the table
+     */
+    public float getValue(long board) {
+        int slot = find(symmetry.canonical(board));
+        return slot == -1 ? Float.NaN : buffer.getFloat(valuesOffset + 4 * slot);
+    }
+
+    /**
+     * Gets the best move from a board.
+     *
+     * @param board board
+     * @return {@link notpure.game2048.model.tile.TileGrid.Direction} ordinal, or {@link Player#NO_MOVE} if the
+     * game is over or the board is not in the table
+     */
+    public int getBestMove(long board) {
+        int s = symmetry.canonicalSymmetry(board);
+        int slot = find(symmetry.apply(board, s));
+        int move = slot == -1 ? Player.NO_MOVE : buffer.get(movesOffset + slot);
+        return move == Player.NO_MOVE ? Player.NO_MOVE : symmetry.mapMove(move, symmetry.inverse(s));
+    }
+
+    /**
+     * Checks if this table is for boards of the given rules.
+     *
+     * @param rules rules
+     * @return whether or not the grid sizes match
+     */
+    public boolean covers(BoardRules rules) {
+        return rules.getRows() == rows && rules.getCols() == cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Gets the largest power of two on the boards in the table, the game counting as over once it is reached.
+     *
+     * @return max exponent
+     */
+    public int getMaxExponent() {
+        return maxExponent;
+    }
+
+    /**
+     * Checks if the table ends games at a tile below {@link BoardRules#MAX_EXPONENT}, valuing boards for that
+     * objective rather than the real game.
+     *
+     * @return whether or not the table is capped
+     */
+    public boolean isCapped() {
+        return maxExponent < BoardRules.MAX_EXPONENT;
+    }
+
+    /**
+     * Gets the size of the table in bytes.
+     *
+     * @return size
+     */
+    public int getSize() {
+        return buffer.capacity();
+    }
+
+    static int keysOffset(int bucketCount) {
+        return HEADER_SIZE + 8 * ((bucketCount + 1) / 2);
+    }
+
+    static int bucket(long board, int bucketCount) {
+        return range(GameRandom.mix(board), bucketCount);
+    }
+
+    static int slot(long board, int displacement, int slotCount) {
+        return range(GameRandom.mix(board + (displacement + 1) * DISPLACEMENT_STEP), slotCount);
+    }
+
+    /**
+     * Maps a hash onto {@code [0, n)} by multiplication, which is cheaper than a remainder.
+     */
+    private static int range(long hash, int n) {
+        return (int) (((hash >>> 32) * n) >>> 32);
+    }
+}
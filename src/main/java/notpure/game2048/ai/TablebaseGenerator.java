@@ -0,0 +1,578 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.BoardSymmetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves small grids exactly and writes the result as a {@link Tablebase}.
+ * <p>
+ * Every board reachable under the {@link notpure.game2048.model.tile.TileGrid} rules is enumerated, then valued
+ * by expectimax: the expected score still to be gained with best play, averaging over the inserted tile.
+ * As every move inserts a tile, and moving a full board without changing it is pointless, every move
+ * increases the sum of the tiles by 2 or 4. Boards are therefore grouped into layers by tile sum: layers are
+ * enumerated from the smallest sum up and solved from the largest down, each layer in parallel, as a layer
+ * only depends on the two above it. Only canonical boards are kept, as equivalent boards by
+ * {@link BoardSymmetry} have the same value.
+ * <p>
+ * The state count grows quickly with the grid: 2x2 and 2x3 solve in moments, whereas 3x3 and 4x4 only fit
+ * with a maximum tile, reaching which ends the game.
+ * <p>
+ * Usage: {@code TablebaseGenerator <rows> <cols> <file> [max tile] [threads]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class TablebaseGenerator {
+
+    /**
+     * The amount of boards given to a worker at a time.
+     */
+    private static final int CHUNK_SIZE = 4096;
+    /**
+     * The average amount of boards per perfect hash bucket, more makes a smaller table but a slower build.
+     */
+    private static final int BUCKET_SIZE = 4;
+    private static final double LOAD_FACTOR = 0.9;
+    private static final int MAX_DISPLACEMENT = 1 << 24;
+
+    private final BoardRules rules;
+    private final BoardSymmetry symmetry;
+    private final int maxExponent;
+    private final int threads;
+    /**
+     * The reachable boards, by ascending tile sum, each layer sorted.
+     */
+    private final ArrayList<long[]> layers = new ArrayList<>();
+    private int stateCount;
+    private int bucketCount;
+    private int slotCount;
+    private int[] displacements;
+    private long[] keys;
+    private float[] values;
+    private byte[] moves;
+
+    /**
+     * Constructs a new TablebaseGenerator.
+     *
+     * @param rules       rules of the grid to solve
+     * @param maxExponent power of two ending the game once reached, {@link BoardRules#MAX_EXPONENT} for none
+     * @param threads     worker threads
+     */
+    public TablebaseGenerator(BoardRules rules, int maxExponent, int threads) {
+        this.rules = rules;
+        symmetry = new BoardSymmetry(rules);
+        this.maxExponent = maxExponent;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: TablebaseGenerator <rows> <cols> <file> [max tile] [threads]");
+            System.exit(1);
+        }
+        BoardRules rules = new BoardRules(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        int maxExponent = BoardRules.MAX_EXPONENT;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        if (args.length > 3) {
+            int maxTile = Integer.parseInt(args[3]);
+
+            if (Integer.bitCount(maxTile) != 1 || maxTile < 4) {
+                throw new IllegalArgumentException("Max tile must be a power of two of at least 4: " + maxTile);
+            }
+            maxExponent = Integer.numberOfTrailingZeros(maxTile);
+        }
+        Path file = Paths.get(args[2]);
+
+        // Solving
+        TablebaseGenerator generator = new TablebaseGenerator(rules, maxExponent, threads);
+        long start = System.nanoTime();
+        generator.generate();
+        generator.write(file);
+        System.out.printf("Solved %dx%d: %d boards in %d layers, %.1fs%n", rules.getRows(), rules.getCols(),
+                generator.stateCount, generator.layers.size(), (System.nanoTime() - start) / 1e9);
+
+        // Checking the written table, and timing lookups in random order
+        Tablebase tablebase = Tablebase.open(file);
+        long[] sample = generator.sample(1 << 20, new Random(1));
+        int mismatches = 0;
+
+        for (long board : sample) {
+            if (tablebase.getValue(board) != generator.valueOf(board)) {
+                mismatches++;
+            }
+        }
+        double sink = 0;
+
+        for (int round = 0; round < 5; round++) {
+            start = System.nanoTime();
+
+            for (long board : sample) {
+                sink += tablebase.getValue(board);
+            }
+        }
+        double lookupNanos = (double) (System.nanoTime() - start) / sample.length;
+        System.out.printf("Table: %d bytes, %.1f bytes/board, lookup %.0fns, %d mismatches (%s)%n",
+                tablebase.getSize(), (double) tablebase.getSize() / tablebase.getStateCount(), lookupNanos,
+                mismatches, sink > 0 ? "ok" : "empty");
+        System.out.printf("Expected score of a new game with best play: %.2f%n", generator.newGameValue());
+
+        System.out.printf("Usable by expectimax players: %s%n",
+                tablebase.isCapped() ? "no, capped at " + (1 << maxExponent) : "yes");
+
+        if (mismatches != 0) {
+            System.err.println("The written table disagrees with the solved values");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Enumerates, indexes and solves the boards.
+     *
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void generate() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+
+        try {
+            enumerate(workers);
+            index();
+            solve(workers);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Enumerates the reachable boards layer by layer, from the boards of a new game.
+     */
+    private void enumerate(ExecutorService workers) throws InterruptedException {
+        TreeMap<Integer, LongList> pending = new TreeMap<>();
+
+        for (int cell = 0; cell < rules.getCells(); cell++) {
+            for (int exponent = 1; exponent <= 2; exponent++) {
+                pending.computeIfAbsent(2 * exponent, sum -> new LongList())
+                        .add(symmetry.canonical(BoardRules.setExponent(0, cell, exponent)));
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            Map.Entry<Integer, LongList> entry = pending.pollFirstEntry();
+            int sum = entry.getKey();
+            final long[] layer = entry.getValue().toSortedSet();
+            layers.add(layer);
+
+            if (stateCount + (long) layer.length > Integer.MAX_VALUE / 16) {
+                throw new IllegalStateException("Too many boards for one table, set a lower max tile");
+            }
+            stateCount += layer.length;
+
+            // Expanding the layer in parallel
+            List<Callable<LongList[]>> tasks = new ArrayList<>();
+
+            for (int from = 0; from < layer.length; from += CHUNK_SIZE) {
+                final int start = from;
+                tasks.add(() -> successors(layer, start, Math.min(layer.length, start + CHUNK_SIZE)));
+            }
+
+            for (Future<LongList[]> future : workers.invokeAll(tasks)) {
+                LongList[] successors = join(future);
+
+                for (int i = 0; i < 2; i++) {
+                    if (successors[i].size > 0) {
+                        pending.computeIfAbsent(sum + 2 * (i + 1), s -> new LongList()).addAll(successors[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the boards following some boards of a layer.
+     *
+     * @return the boards after inserting a 2, and after inserting a 4
+     */
+    private LongList[] successors(long[] layer, int from, int to) {
+        LongList twos = new LongList();
+        LongList fours = new LongList();
+
+        for (int i = from; i < to; i++) {
+            long board = layer[i];
+
+            if (isOver(board)) {
+                continue;
+            }
+
+            for (int dir = 0; dir < 4; dir++) {
+                long moved = rules.move(board, dir);
+
+                for (int cell = 0; cell < rules.getCells(); cell++) {
+                    if (BoardRules.getExponent(moved, cell) == 0) {
+                        twos.add(symmetry.canonical(BoardRules.setExponent(moved, cell, 1)));
+                        fours.add(symmetry.canonical(BoardRules.setExponent(moved, cell, 2)));
+                    }
+                }
+            }
+        }
+        twos.removeDuplicates(false);
+        fours.removeDuplicates(false);
+        return new LongList[] { twos, fours };
+    }
+
+    /**
+     * Builds the perfect hash of the boards, placing the largest buckets first while the table is emptiest.
+     */
+    private void index() {
+        slotCount = (int) (stateCount / LOAD_FACTOR) + 1;
+        bucketCount = Math.max(1, stateCount / BUCKET_SIZE);
+
+        // Grouping the boards by bucket
+        int[] bucketStarts = new int[bucketCount + 1];
+
+        for (long[] layer : layers) {
+            for (long board : layer) {
+                bucketStarts[Tablebase.bucket(board, bucketCount) + 1]++;
+            }
+        }
+        int maxBucketSize = 0;
+
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[bucket + 1]);
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        long[] grouped = new long[stateCount];
+        int[] cursors = Arrays.copyOf(bucketStarts, bucketCount);
+
+        for (long[] layer : layers) {
+            for (long board : layer) {
+                grouped[cursors[Tablebase.bucket(board, bucketCount)]++] = board;
+            }
+        }
+
+        // Ordering the buckets by descending size
+        int[] sizeStarts = new int[maxBucketSize + 2];
+
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            sizeStarts[maxBucketSize - bucketSize(bucketStarts, bucket) + 1]++;
+        }
+
+        for (int i = 1; i < sizeStarts.length; i++) {
+            sizeStarts[i] += sizeStarts[i - 1];
+        }
+        int[] order = new int[bucketCount];
+
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            order[sizeStarts[maxBucketSize - bucketSize(bucketStarts, bucket)]++] = bucket;
+        }
+
+        // Finding a displacement sending every board of a bucket to a free slot
+        displacements = new int[bucketCount];
+        keys = new long[slotCount];
+        int[] slots = new int[maxBucketSize];
+
+        for (int bucket : order) {
+            int start = bucketStarts[bucket];
+            int size = bucketSize(bucketStarts, bucket);
+
+            if (size == 0) {
+                break;
+            }
+            int displacement = 0;
+
+            while (!tryPlace(grouped, start, size, displacement, slots)) {
+                if (++displacement == MAX_DISPLACEMENT) {
+                    throw new IllegalStateException("No displacement found for bucket " + bucket);
+                }
+            }
+            displacements[bucket] = displacement;
+
+            for (int i = 0; i < size; i++) {
+                keys[slots[i]] = grouped[start + i];
+            }
+        }
+    }
+
+    private static int bucketSize(int[] bucketStarts, int bucket) {
+        return bucketStarts[bucket + 1] - bucketStarts[bucket];
+    }
+
+    private boolean tryPlace(long[] grouped, int start, int size, int displacement, int[] slots) {
+        for (int i = 0; i < size; i++) {
+            int slot = Tablebase.slot(grouped[start + i], displacement, slotCount);
+
+            if (keys[slot] != 0) {
+                return false;
+            }
+
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+    private int slotOf(long board) {
+        return Tablebase.slot(board, displacements[Tablebase.bucket(board, bucketCount)], slotCount);
+    }
+
+    private float valueOf(long board) {
+        return values[slotOf(symmetry.canonical(board))];
+    }
+
+    /**
+     * Values every board, from the layer with the largest tile sum down.
+     */
+    private void solve(ExecutorService workers) throws InterruptedException {
+        values = new float[slotCount];
+        moves = new byte[slotCount];
+        Arrays.fill(moves, (byte) Player.NO_MOVE);
+
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            final long[] layer = layers.get(i);
+            List<Callable<Void>> tasks = new ArrayList<>();
+
+            for (int from = 0; from < layer.length; from += CHUNK_SIZE) {
+                final int start = from;
+                tasks.add(() -> {
+                    for (int j = start; j < Math.min(layer.length, start + CHUNK_SIZE); j++) {
+                        solve(layer[j]);
+                    }
+                    return null;
+                });
+            }
+
+            for (Future<Void> future : workers.invokeAll(tasks)) {
+                join(future);
+            }
+        }
+    }
+
+    /**
+     * Values a board, the boards it leads to having been valued already.
+     *
+     * @param board board
+     */
+    private void solve(long board) {
+        if (isOver(board)) {
+            return;
+        }
+        double best = -1;
+        int bestMove = Player.NO_MOVE;
+
+        for (int dir = 0; dir < 4; dir++) {
+            if (!rules.canMove(board, dir)) {
+                continue;
+            }
+            long moved = rules.move(board, dir);
+            int free = rules.emptyCells(moved);
+            double expected = 0;
+
+            for (int cell = 0; cell < rules.getCells(); cell++) {
+                if (BoardRules.getExponent(moved, cell) == 0) {
+                    expected += BoardRules.TWO_PROBABILITY * valueOf(BoardRules.setExponent(moved, cell, 1))
+                            + (1 - BoardRules.TWO_PROBABILITY) * valueOf(BoardRules.setExponent(moved, cell, 2));
+                }
+            }
+            double value = rules.moveScore(board, dir) + expected / free;
+
+            if (value > best) {
+                best = value;
+                bestMove = dir;
+            }
+        }
+        int slot = slotOf(board);
+        values[slot] = (float) best;
+        moves[slot] = (byte) bestMove;
+    }
+
+    private boolean isOver(long board) {
+        return !rules.hasMoves(board) || rules.maxValue(board) >= 1 << maxExponent;
+    }
+
+    /**
+     * Gets the expected score of a new game, from a single random tile.
+     *
+     * @return expected score
+     */
+    private double newGameValue() {
+        double total = 0;
+
+        for (int cell = 0; cell < rules.getCells(); cell++) {
+            total += BoardRules.TWO_PROBABILITY * valueOf(BoardRules.setExponent(0, cell, 1))
+                    + (1 - BoardRules.TWO_PROBABILITY) * valueOf(BoardRules.setExponent(0, cell, 2));
+        }
+        return total / rules.getCells();
+    }
+
+    /**
+     * Picks boards at random, in any of their symmetries, for checking and timing lookups.
+     */
+    private long[] sample(int count, Random random) {
+        long[] sample = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            long[] layer = layers.get(random.nextInt(layers.size()));
+            sample[i] = symmetry.apply(layer[random.nextInt(layer.length)], random.nextInt(symmetry.getCount()));
+        }
+        return sample;
+    }
+
+    /**
+     * Writes the table.
+     *
+     * @param file destination
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        int keysOffset = Tablebase.keysOffset(bucketCount);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        buffer.putInt(Tablebase.MAGIC).putInt(Tablebase.VERSION).putInt(rules.getRows()).putInt(rules.getCols())
+                .putInt(stateCount).putInt(bucketCount).putInt(slotCount).putInt(maxExponent);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int displacement : displacements) {
+                buffer = ensureRemaining(channel, buffer, 4);
+                buffer.putInt(displacement);
+            }
+
+            while (channel.position() + buffer.position() < keysOffset) {
+                buffer = ensureRemaining(channel, buffer, 1);
+                buffer.put((byte) 0);
+            }
+
+            for (long key : keys) {
+                buffer = ensureRemaining(channel, buffer, 8);
+                buffer.putLong(key);
+            }
+
+            for (float value : values) {
+                buffer = ensureRemaining(channel, buffer, 4);
+                buffer.putFloat(value);
+            }
+
+            for (byte move : moves) {
+                buffer = ensureRemaining(channel, buffer, 1);
+                buffer.put(move);
+            }
+            buffer.flip();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    private static <T> T join(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tablebase worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * A growable list of boards.
+     */
+    private static final class LongList {
+
+        private long[] data = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            if (size + other.size > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.data, 0, data, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * Sorts the boards and drops duplicates.
+         *
+         * @param parallel whether or not to sort in parallel
+         */
+        void removeDuplicates(boolean parallel) {
+            if (parallel) {
+                Arrays.parallelSort(data, 0, size);
+            } else {
+                Arrays.sort(data, 0, size);
+            }
+            int count = 0;
+
+            for (int i = 0; i < size; i++) {
+                if (count == 0 || data[count - 1] != data[i]) {
+                    data[count++] = data[i];
+                }
+            }
+            size = count;
+        }
+
+        /**
+         * Gets the distinct boards.
+         *
+         * @return distinct boards in ascending order
+         */
+        long[] toSortedSet() {
+            removeDuplicates(true);
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,580 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.ai;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+import notpure.game2048.util.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares players on a fixed suite of seeds: every player plays a game from every seed, on a 4x4 grid unless
+ * another is given, the games running in parallel, and the scores, tiles reached, moves per second and move
+ * latencies are reported.
+ * <p>
+ * Games follow the {@link notpure.game2048.model.tile.TileGrid} rules through {@link BoardRules}, seeded by
+ * {@link GameRandom}, so a seed always deals the same tiles to the same moves. Per-game results can be written
+ * as CSV and the summary as JSON. Given the CSV of an earlier run, each player's scores are compared seed by
+ * seed, and the run fails if a player's mean score dropped significantly (a paired z-test).
+ * <p>
+ * Usage: {@code Tournament [--grid <rows>x<cols>] [--seeds count | --seed-file file] [--threads n] [--csv file]
+ * [--json file] [--baseline csv] [--z threshold] [--book file] [--tablebase file] player...}, players being
+ * {@code random}, {@code expectimax:<depth>}, {@code expectimax-cached:<depth>} or
+ * {@code montecarlo:<playouts per move>}, all consulting the {@link OpeningBook} first if one is given, and the
+ * expectimax players looking boards up in the {@link Tablebase} if one is given.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class Tournament {
+
+    private static final int[] MILESTONES = { 2048, 4096, 8192 };
+    private static final String CSV_HEADER = "player,seed,score,max_tile,moves,nanos";
+
+    private final BoardRules rules;
+    private final long[] seeds;
+    private final int threads;
+    /**
+     * The opening book every player consults first, or null.
+     */
+    private OpeningBook book;
+    /**
+     * The tablebase the expectimax players look boards up in, or null.
+     */
+    private Tablebase tablebase;
+
+    /**
+     * Constructs a new Tournament on 4x4 grids.
+     *
+     * @param seeds   seeds to play every player on
+     * @param threads games played at once
+     */
+    public Tournament(long[] seeds, int threads) {
+        this(new BoardRules(4, 4), seeds, threads);
+    }
+
+    /**
+     * Constructs a new Tournament.
+     *
+     * @param rules   rules of the grid played on
+     * @param seeds   seeds to play every player on
+     * @param threads games played at once
+     */
+    public Tournament(BoardRules rules, long[] seeds, int threads) {
+        this.rules = rules;
+        this.seeds = seeds;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BoardRules rules = new BoardRules(4, 4);
+        long[] seeds = null;
+        int seedCount = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path csv = null;
+        Path json = null;
+        Path baseline = null;
+        double threshold = 2.58;
+        OpeningBook book = null;
+        Tablebase tablebase = null;
+        List<String> players = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--grid":
+                    rules = rules(args[++i]);
+                    break;
+                case "--seeds":
+                    seedCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed-file":
+                    seeds = readSeeds(Paths.get(args[++i]));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--csv":
+                    csv = Paths.get(args[++i]);
+                    break;
+                case "--json":
+                    json = Paths.get(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--z":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--book":
+                    book = OpeningBook.open(Paths.get(args[++i]));
+                    break;
+                case "--tablebase":
+                    tablebase = Tablebase.open(Paths.get(args[++i]));
+                    break;
+                default:
+                    players.add(args[i]);
+            }
+        }
+
+        if (players.isEmpty()) {
+            System.err.println("Usage: Tournament [--grid <rows>x<cols>] [--seeds count | --seed-file file]"
+                    + " [--threads n] [--csv file] [--json file] [--baseline csv] [--z threshold] [--book file]"
+                    + " [--tablebase file] player...");
+            System.exit(1);
+        }
+
+        if (seeds == null) {
+            seeds = new long[seedCount];
+
+            for (int i = 0; i < seedCount; i++) {
+                seeds[i] = i;
+            }
+        }
+
+        // Playing
+        Tournament tournament = new Tournament(rules, seeds, threads);
+        tournament.setBook(book);
+        tournament.setTablebase(tablebase);
+        List<Result[]> results = new ArrayList<>();
+
+        for (String player : players) {
+            Result[] games = tournament.play(player);
+            results.add(games);
+            System.out.println(summarise(player, games).toText());
+        }
+
+        // Reporting
+        if (csv != null) {
+            writeCsv(csv, players, results);
+        }
+
+        if (json != null) {
+            writeJson(json, seeds.length, players, results);
+        }
+
+        if (baseline != null && !compare(readCsv(baseline), players, results, threshold)) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Plays a player on every seed.
+     *
+     * @param player player specification
+     * @return the game of each seed, in seed order
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public Result[] play(final String player) throws InterruptedException {
+        return play(player, factory(rules, player, tablebase));
+    }
+
+    /**
+     * Plays the players of a factory on every seed.
+     *
+     * @param player  player name, for errors
+     * @param factory factory of the player for each game
+     * @return the game of each seed, in seed order
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public Result[] play(String player, PlayerFactory factory) throws InterruptedException {
+        final PlayerFactory players = book == null ? factory : bookFactory(factory);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+
+        try {
+            for (final long seed : seeds) {
+                futures.add(workers.submit(() -> playGame(players, seed)));
+            }
+            Result[] results = new Result[seeds.length];
+
+            for (int i = 0; i < results.length; i++) {
+                results[i] = futures.get(i).get();
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game of " + player + " failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private Result playGame(PlayerFactory factory, long seed) throws IOException {
+        Result result = new Result(seed);
+        GameRandom random = new GameRandom(GameRandom.mix(seed));
+        Player player = factory.create(GameRandom.mix(~seed));
+        long board = rules.newGame(random);
+        long start = System.nanoTime();
+
+        try {
+            while (true) {
+                long moveStart = System.nanoTime();
+                int dir = player.chooseMove(board);
+                result.latencies.record(System.nanoTime() - moveStart);
+
+                if (dir == Player.NO_MOVE) {
+                    break;
+                }
+                result.score += rules.moveScore(board, dir);
+                board = rules.performMove(board, dir, random);
+                result.moves++;
+            }
+        } finally {
+            if (player instanceof Closeable) {
+                ((Closeable) player).close();
+            }
+        }
+        result.nanos = System.nanoTime() - start;
+        result.maxTile = rules.maxValue(board);
+        return result;
+    }
+
+    /**
+     * Wraps the players of a factory to consult the opening book first.
+     */
+    private PlayerFactory bookFactory(PlayerFactory factory) {
+        final OpeningBook book = this.book;
+        return seed -> new BookPlayer(rules, book, factory.create(seed));
+    }
+
+    /**
+     * Lets every player consult an opening book first.
+     *
+     * @param book opening book for 4x4 grids, or null
+     */
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Lets every expectimax player look boards up in a tablebase.
+     *
+     * @param tablebase tablebase for grids of the size played on, not capped, or null
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Parses a grid size, such as {@code 3x3}.
+     *
+     * @param grid grid size
+     * @return rules of the grid
+     */
+    public static BoardRules rules(String grid) {
+        String[] parts = grid.split("x");
+
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Grid size must be <rows>x<cols>: " + grid);
+        }
+        return new BoardRules(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * Parses a player specification.
+     *
+     * @param rules rules of the grid played on
+     * @param spec  player specification
+     * @return factory of the player for each game
+     */
+    public static PlayerFactory factory(BoardRules rules, String spec) {
+        return factory(rules, spec, null);
+    }
+
+    /**
+     * Parses a player specification.
+     *
+     * @param rules     rules of the grid played on
+     * @param spec      player specification
+     * @param tablebase tablebase the expectimax players look boards up in, for grids of the size played on and not
+     *                  capped, or null
+     * @return factory of the player for each game
+     */
+    public static PlayerFactory factory(BoardRules rules, String spec, Tablebase tablebase) {
+        String[] parts = spec.split(":");
+        int parameter = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+
+        switch (parts[0]) {
+            case "random":
+                return seed -> new RandomPlayer(rules, seed);
+            case "expectimax":
+                final ExpectimaxPlayer expectimax = new ExpectimaxPlayer(rules, tablebase, Math.max(1, parameter));
+                return seed -> expectimax;
+            case "expectimax-cached":
+                // Shared, so results may vary slightly with the order games fill the cache in
+                final ExpectimaxPlayer cached = new ExpectimaxPlayer(rules, tablebase, new EvaluationCache(1 << 22),
+                        Math.max(1, parameter));
+                return seed -> cached;
+            case "montecarlo":
+                final int playouts = Math.max(1, parameter);
+                return seed -> new MonteCarloPlayer(rules, playouts, 0, 1, seed);
+            default:
+                throw new IllegalArgumentException("Unknown player: " + spec);
+        }
+    }
+
+    /**
+     * Summarises the games of a player.
+     *
+     * @param player player specification
+     * @param games  games
+     * @return summary
+     */
+    public static Summary summarise(String player, Result[] games) {
+        Summary summary = new Summary(player);
+        int[] scores = new int[games.length];
+        long moves = 0;
+        long nanos = 0;
+
+        for (int i = 0; i < games.length; i++) {
+            Result game = games[i];
+            scores[i] = game.score;
+            summary.meanScore += (double) game.score / games.length;
+            moves += game.moves;
+            nanos += game.nanos;
+            summary.latencies.merge(game.latencies);
+
+            for (int m = 0; m < MILESTONES.length; m++) {
+                if (game.maxTile >= MILESTONES[m]) {
+                    summary.reachRates[m] += 1.0 / games.length;
+                }
+            }
+        }
+        Arrays.sort(scores);
+        summary.games = games.length;
+        summary.medianScore = scores.length % 2 == 1 ? scores[scores.length / 2]
+                : (scores[scores.length / 2 - 1] + scores[scores.length / 2]) / 2.0;
+        summary.movesPerSecond = nanos == 0 ? 0 : moves * 1e9 / nanos;
+        return summary;
+    }
+
+    /**
+     * Compares the scores of each player with an earlier run on the seeds both played.
+     *
+     * @return whether or not no player regressed significantly
+     */
+    private static boolean compare(Map<String, Map<Long, Integer>> baseline, List<String> players,
+                                   List<Result[]> results, double threshold) {
+        boolean passed = true;
+
+        for (int p = 0; p < players.size(); p++) {
+            Map<Long, Integer> before = baseline.get(players.get(p));
+
+            if (before == null) {
+                System.out.println(players.get(p) + ": no baseline");
+                continue;
+            }
+            int n = 0;
+            double sum = 0;
+            double sumSquares = 0;
+
+            for (Result game : results.get(p)) {
+                Integer previous = before.get(game.seed);
+
+                if (previous != null) {
+                    double diff = game.score - previous;
+                    sum += diff;
+                    sumSquares += diff * diff;
+                    n++;
+                }
+            }
+
+            if (n == 0) {
+                System.out.println(players.get(p) + ": no seeds in common with the baseline");
+                continue;
+            }
+            double mean = sum / n;
+            double variance = n > 1 ? (sumSquares - n * mean * mean) / (n - 1) : 0;
+            double standardError = Math.sqrt(Math.max(0, variance) / n);
+            double z = standardError == 0 ? (mean < 0 ? Double.NEGATIVE_INFINITY : 0) : mean / standardError;
+            boolean regressed = z < -threshold;
+            passed &= !regressed;
+            System.out.printf(Locale.ROOT, "%s: mean score change %+.1f over %d seeds, z %.2f%s%n", players.get(p),
+                    mean, n, z, regressed ? " - REGRESSION" : "");
+        }
+        return passed;
+    }
+
+    private static long[] readSeeds(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        long[] seeds = new long[lines.size()];
+        int count = 0;
+
+        for (String line : lines) {
+            if (!line.trim().isEmpty()) {
+                seeds[count++] = Long.parseLong(line.trim());
+            }
+        }
+        return Arrays.copyOf(seeds, count);
+    }
+
+    private static void writeCsv(Path file, List<String> players, List<Result[]> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println(CSV_HEADER);
+
+            for (int p = 0; p < players.size(); p++) {
+                for (Result game : results.get(p)) {
+                    out.printf(Locale.ROOT, "%s,%d,%d,%d,%d,%d%n", players.get(p), game.seed, game.score,
+                            game.maxTile, game.moves, game.nanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the scores of a CSV written by an earlier run.
+     *
+     * @return the score by seed, by player
+     */
+    private static Map<String, Map<Long, Integer>> readCsv(Path file) throws IOException {
+        Map<String, Map<Long, Integer>> scores = new HashMap<>();
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!CSV_HEADER.equals(in.readLine())) {
+                throw new IOException("Not a tournament CSV: " + file);
+            }
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                scores.computeIfAbsent(fields[0], player -> new HashMap<>())
+                        .put(Long.parseLong(fields[1]), Integer.parseInt(fields[2]));
+            }
+        }
+        return scores;
+    }
+
+    private static void writeJson(Path file, int seedCount, List<String> players, List<Result[]> results)
+            throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.printf(Locale.ROOT, "{%n  \"seeds\": %d,%n  \"players\": [", seedCount);
+
+            for (int p = 0; p < players.size(); p++) {
+                out.print(p == 0 ? "\n" : ",\n");
+                out.print(summarise(players.get(p), results.get(p)).toJson());
+            }
+            out.printf("%n  ]%n}%n");
+        }
+    }
+
+    /**
+     * Creates a player for one game.
+     */
+    public interface PlayerFactory {
+
+        Player create(long seed);
+    }
+
+    /**
+     * The outcome of one game.
+     */
+    public static final class Result {
+
+        private final long seed;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private int score;
+        private int maxTile;
+        private int moves;
+        private long nanos;
+
+        private Result(long seed) {
+            this.seed = seed;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getMaxTile() {
+            return maxTile;
+        }
+
+        public int getMoves() {
+            return moves;
+        }
+    }
+
+    /**
+     * The statistics of a player's games.
+     */
+    public static final class Summary {
+
+        private final String player;
+        private final double[] reachRates = new double[MILESTONES.length];
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private int games;
+        private double meanScore;
+        private double medianScore;
+        private double movesPerSecond;
+
+        private Summary(String player) {
+            this.player = player;
+        }
+
+        public String toText() {
+            return String.format(Locale.ROOT, "%s: %d games, score mean %.0f median %.0f, reached 2048 %.1f%%"
+                            + " 4096 %.1f%% 8192 %.1f%%, %.0f moves/s, move latency (us) p50 %.1f p99 %.1f max %.1f",
+                    player, games, meanScore, medianScore, 100 * reachRates[0], 100 * reachRates[1],
+                    100 * reachRates[2], movesPerSecond, latencies.percentile(0.5) / 1e3,
+                    latencies.percentile(0.99) / 1e3, latencies.getMax() / 1e3);
+        }
+
+        private String toJson() {
+            return String.format(Locale.ROOT, "    {\"player\": \"%s\", \"games\": %d, \"meanScore\": %.2f,"
+                            + " \"medianScore\": %.1f, \"reach2048\": %.4f, \"reach4096\": %.4f, \"reach8192\": %.4f,"
+                            + " \"movesPerSecond\": %.1f, \"latencyNanos\": {\"p50\": %d, \"p90\": %d, \"p99\": %d,"
+                            + " \"p999\": %d, \"max\": %d}}",
+                    player, games, meanScore, medianScore, reachRates[0], reachRates[1], reachRates[2],
+                    movesPerSecond, latencies.percentile(0.5), latencies.percentile(0.9),
+                    latencies.percentile(0.99), latencies.percentile(0.999), latencies.getMax());
+        }
+
+        public double getMeanScore() {
+            return meanScore;
+        }
+
+        public double getMedianScore() {
+            return medianScore;
+        }
+
+        public double getMovesPerSecond() {
+            return movesPerSecond;
+        }
+    }
+}
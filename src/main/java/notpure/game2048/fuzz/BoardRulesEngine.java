@@ -0,0 +1,84 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.fuzz;
+
+import notpure.game2048.model.board.BoardRules;
+
+/**
+ * The packed board engine used for search and simulation, {@link BoardRules}.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class BoardRulesEngine implements MoveEngine {
+
+    /**
+     * The rules of each size, created when first used.
+     */
+    private final BoardRules[] rules = new BoardRules[25];
+    private BoardRules current;
+    private long board;
+    private int cells;
+
+    @Override
+    public String getName() {
+        return "BoardRules";
+    }
+
+    @Override
+    public int getMaxValue() {
+        return 1 << BoardRules.MAX_EXPONENT;
+    }
+
+    @Override
+    public void load(int rows, int cols, int[] values) {
+        int shape = rows * 5 + cols;
+
+        if (rules[shape] == null) {
+            rules[shape] = new BoardRules(rows, cols);
+        }
+        current = rules[shape];
+        cells = rows * cols;
+        board = current.encode(values);
+    }
+
+    @Override
+    public int move(int dir) {
+        int score = current.moveScore(board, dir);
+        board = current.move(board, dir);
+        return score;
+    }
+
+    @Override
+    public void set(int cell, int value) {
+        board = BoardRules.setExponent(board, cell, value == -1 ? 0 : Integer.numberOfTrailingZeros(value));
+    }
+
+    @Override
+    public void store(int[] values) {
+        for (int cell = 0; cell < cells; cell++) {
+            values[cell] = BoardRules.getValue(board, cell);
+        }
+    }
+
+    @Override
+    public boolean hasMoves() {
+        return current.hasMoves(board);
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.fuzz;
+
+import notpure.game2048.model.board.GameRandom;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Plays random boards and moves on a reference engine and candidate engines side by side, comparing the tiles,
+ * score and whether a move can be made after every step. The first failing case found is shrunk to a minimal one.
+ * Usage: {@code DifferentialFuzzer [seconds] [threads] [seed] [candidate engine classes...]}, comparing
+ * {@link TileGridEngine} to {@link BoardRulesEngine} by default.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class DifferentialFuzzer {
+
+    /**
+     * The case indices a worker claims at once.
+     */
+    private static final int CHUNK = 1024;
+    /**
+     * The result of a passing case.
+     */
+    private static final int PASSED = -1;
+
+    private final Supplier<MoveEngine> reference;
+    private final List<Supplier<MoveEngine>> candidates;
+    private final AtomicLong nextIndex = new AtomicLong();
+    private final AtomicLong cases = new AtomicLong();
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicReference<Failure> failure = new AtomicReference<>();
+
+    /**
+     * Constructs a new DifferentialFuzzer.
+     *
+     * @param reference  creates the engine taken to be correct
+     * @param candidates create the engines compared to it
+     */
+    public DifferentialFuzzer(Supplier<MoveEngine> reference, List<Supplier<MoveEngine>> candidates) {
+        this.reference = reference;
+        this.candidates = candidates;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        List<Supplier<MoveEngine>> candidates = new ArrayList<>();
+
+        for (int i = 3; i < args.length; i++) {
+            candidates.add(factory(args[i]));
+        }
+
+        if (candidates.isEmpty()) {
+            candidates.add(BoardRulesEngine::new);
+        }
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(TileGridEngine::new, candidates);
+        System.out.printf("Fuzzing for %ds on %d threads, seed %d%n", seconds, threads, seed);
+        boolean passed = fuzzer.run(seed, threads, seconds * 1000L);
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Creates a factory of the given engine class, through its no-argument constructor.
+     *
+     * @param className engine class name
+     * @return factory
+     * @throws ReflectiveOperationException if the class or its no-argument constructor cannot be found
+     */
+    private static Supplier<MoveEngine> factory(String className) throws ReflectiveOperationException {
+        Constructor<? extends MoveEngine> constructor = Class.forName(className).asSubclass(MoveEngine.class)
+                .getDeclaredConstructor();
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create " + className, e);
+            }
+        };
+    }
+
+    /**
+     * Runs cases until the time is up or a case fails, then prints the throughput and the shrunk failing case.
+     *
+     * @param seed     the seed cases are derived from
+     * @param threads  worker threads
+     * @param duration milliseconds to run for
+     * @return whether or not every case passed
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public boolean run(long seed, int threads, long duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + duration * 1_000_000L;
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> work(seed, deadline), "fuzzer-" + i);
+            workers[i].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double minutes = (System.nanoTime() - start) / 60e9;
+        System.out.printf("%d cases, %d moves: %.2fM cases/min, %.2fM moves/min%n", cases.get(), steps.get(),
+                cases.get() / minutes / 1e6, steps.get() / minutes / 1e6);
+
+        Failure found = failure.get();
+
+        if (found == null) {
+            return true;
+        }
+
+        // Reporting the original and the shrunk case
+        MoveEngine ref = reference.get();
+        MoveEngine candidate = candidates.get(found.candidate).get();
+        System.out.println("FAILED: " + ref.getName() + " and " + candidate.getName() + " differ on case\n"
+                + found.fuzzCase);
+        FuzzCase shrunk = shrink(found.fuzzCase, ref, candidate);
+        StringBuilder report = new StringBuilder();
+        check(shrunk, ref, candidate, report);
+        System.out.println("Shrunk to\n" + shrunk + "\n" + report);
+        return false;
+    }
+
+    /**
+     * Runs the claimed cases of a worker until the deadline or a failure.
+     *
+     * @param seed     the seed cases are derived from
+     * @param deadline {@link System#nanoTime()} to stop at
+     */
+    private void work(long seed, long deadline) {
+        MoveEngine ref = reference.get();
+        MoveEngine[] engines = new MoveEngine[candidates.size()];
+
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = candidates.get(i).get();
+        }
+        GameRandom random = new GameRandom(seed);
+        Workspace workspace = new Workspace();
+
+        while (failure.get() == null && System.nanoTime() < deadline) {
+            long first = nextIndex.getAndAdd(CHUNK);
+            long moves = 0;
+            int done = 0;
+
+            for (long index = first; index < first + CHUNK && failure.get() == null; index++, done++) {
+                FuzzCase fuzzCase = FuzzCase.generate(GameRandom.mix(seed + index), random);
+
+                for (int i = 0; i < engines.length; i++) {
+                    int result = check(fuzzCase, ref, engines[i], workspace, null);
+
+                    if (result != PASSED) {
+                        failure.compareAndSet(null, new Failure(fuzzCase, i));
+                        break;
+                    }
+                }
+                moves += fuzzCase.getSteps();
+            }
+            cases.addAndGet(done);
+            steps.addAndGet(moves);
+        }
+    }
+
+    /**
+     * Plays a case on two engines.
+     *
+     * @param fuzzCase  case
+     * @param ref       the reference engine
+     * @param candidate the compared engine
+     * @param report    appended a trace of the case if not null
+     * @return {@link #PASSED}, or the number of moves played when the engines differed
+     */
+    public static int check(FuzzCase fuzzCase, MoveEngine ref, MoveEngine candidate, StringBuilder report) {
+        return check(fuzzCase, ref, candidate, new Workspace(), report);
+    }
+
+    private static int check(FuzzCase fuzzCase, MoveEngine ref, MoveEngine candidate, Workspace workspace,
+                             StringBuilder report) {
+        int rows = fuzzCase.getRows();
+        int cols = fuzzCase.getCols();
+        int cells = rows * cols;
+        int[] expected = workspace.expected;
+        int[] actual = workspace.actual;
+        int[] values = fuzzCase.getValues();
+        ref.load(rows, cols, values);
+        candidate.load(rows, cols, values);
+
+        if (report != null) {
+            report.append("Start\n");
+        }
+
+        if (differs(ref, candidate, expected, actual, cells, 0, 0, rows, cols, report)) {
+            return 0;
+        }
+
+        for (int step = 0; step < fuzzCase.getSteps(); step++) {
+            int dir = fuzzCase.getDirection(step);
+            int expectedScore = ref.move(dir);
+            int actualScore = candidate.move(dir);
+
+            if (report != null) {
+                report.append(FuzzCase.directionName(dir)).append('\n');
+            }
+
+            if (differs(ref, candidate, expected, actual, cells, expectedScore, actualScore, rows, cols, report)) {
+                return step + 1;
+            }
+
+            // Boards with tiles the candidate cannot hold are out of its domain
+            for (int cell = 0; cell < cells; cell++) {
+                if (expected[cell] >= candidate.getMaxValue()) {
+                    return PASSED;
+                }
+            }
+
+            // Spawning identically on both
+            int spawn = fuzzCase.getSpawn(step);
+            int cell = spawn == FuzzCase.NO_SPAWN ? -1 : FuzzCase.spawnCell(spawn, expected, cells);
+
+            if (cell != -1) {
+                ref.set(cell, FuzzCase.spawnValue(spawn));
+                candidate.set(cell, FuzzCase.spawnValue(spawn));
+
+                if (report != null) {
+                    report.append("Spawn ").append(FuzzCase.spawnValue(spawn)).append(" at ").append(cell).append('\n');
+                }
+
+                if (differs(ref, candidate, expected, actual, cells, 0, 0, rows, cols, report)) {
+                    return step + 1;
+                }
+            }
+        }
+        return PASSED;
+    }
+
+    /**
+     * Compares the engines after a step.
+     *
+     * @return whether or not they differ
+     */
+    private static boolean differs(MoveEngine ref, MoveEngine candidate, int[] expected, int[] actual, int cells,
+                                   int expectedScore, int actualScore, int rows, int cols, StringBuilder report) {
+        ref.store(expected);
+        candidate.store(actual);
+        boolean expectedMoves = ref.hasMoves();
+        boolean actualMoves = candidate.hasMoves();
+        boolean differs = expectedScore != actualScore || expectedMoves != actualMoves;
+
+        for (int cell = 0; cell < cells && !differs; cell++) {
+            differs = expected[cell] != actual[cell];
+        }
+
+        if (report != null) {
+            report.append(ref.getName()).append(": score ").append(expectedScore).append(", has moves ")
+                    .append(expectedMoves).append('\n');
+            FuzzCase.appendBoard(report, expected, rows, cols);
+
+            if (differs) {
+                report.append(candidate.getName()).append(": score ").append(actualScore).append(", has moves ")
+                        .append(actualMoves).append('\n');
+                FuzzCase.appendBoard(report, actual, rows, cols);
+            }
+        }
+        return differs;
+    }
+
+    /**
+     * Shrinks a failing case, repeatedly dropping moves, spawns, tiles, rows and columns, playing the first move into
+     * the board and halving tiles for as long as the result still fails.
+     *
+     * @param fuzzCase  failing case
+     * @param ref       the reference engine
+     * @param candidate the compared engine
+     * @return the smallest failing case found
+     */
+    public static FuzzCase shrink(FuzzCase fuzzCase, MoveEngine ref, MoveEngine candidate) {
+        Workspace workspace = new Workspace();
+        int failedAt = check(fuzzCase, ref, candidate, workspace, null);
+
+        if (failedAt == PASSED) {
+            throw new IllegalArgumentException("case passes");
+        }
+
+        // Moves after the failure play no part in it
+        FuzzCase best = fuzzCase.withSteps(Arrays.copyOf(fuzzCase.getDirections(), failedAt),
+                Arrays.copyOf(fuzzCase.getSpawns(), failedAt));
+        boolean shrunk = true;
+
+        while (shrunk) {
+            shrunk = false;
+
+            for (FuzzCase smaller : smaller(best, ref, workspace)) {
+                int result = check(smaller, ref, candidate, workspace, null);
+
+                if (result != PASSED) {
+                    best = smaller.withSteps(Arrays.copyOf(smaller.getDirections(), result),
+                            Arrays.copyOf(smaller.getSpawns(), result));
+                    shrunk = true;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Lists the cases one simplification away from a case.
+     *
+     * @param fuzzCase  case
+     * @param ref       the reference engine, playing the first move
+     * @param workspace buffers
+     * @return smaller cases, the largest reductions first
+     */
+    private static List<FuzzCase> smaller(FuzzCase fuzzCase, MoveEngine ref, Workspace workspace) {
+        List<FuzzCase> cases = new ArrayList<>();
+        int rows = fuzzCase.getRows();
+        int cols = fuzzCase.getCols();
+        int[] values = fuzzCase.getValues();
+        int[] dirs = fuzzCase.getDirections();
+        int[] spawns = fuzzCase.getSpawns();
+
+        // Rows and columns
+        for (int row = 0; row < rows && rows > 1; row++) {
+            cases.add(fuzzCase.withBoard(rows - 1, cols, removeRow(values, rows, cols, row)));
+        }
+
+        for (int col = 0; col < cols && cols > 1; col++) {
+            cases.add(fuzzCase.withBoard(rows, cols - 1, removeColumn(values, rows, cols, col)));
+        }
+
+        // Moves and spawns
+        for (int step = 0; step < dirs.length; step++) {
+            cases.add(fuzzCase.withSteps(remove(dirs, step), remove(spawns, step)));
+        }
+
+        if (dirs.length > 0) {
+            cases.add(playFirst(fuzzCase, ref, workspace.expected));
+        }
+
+        for (int step = 0; step < spawns.length; step++) {
+            if (spawns[step] != FuzzCase.NO_SPAWN) {
+                int[] fewer = spawns.clone();
+                fewer[step] = FuzzCase.NO_SPAWN;
+                cases.add(fuzzCase.withSteps(dirs, fewer));
+            }
+        }
+
+        // Tiles
+        for (int cell = 0; cell < values.length; cell++) {
+            if (values[cell] != -1) {
+                int[] fewer = values.clone();
+                fewer[cell] = -1;
+                cases.add(fuzzCase.withBoard(rows, cols, fewer));
+            }
+        }
+
+        for (int cell = 0; cell < values.length; cell++) {
+            if (values[cell] > 2) {
+                int[] lower = values.clone();
+                lower[cell] /= 2;
+                cases.add(fuzzCase.withBoard(rows, cols, lower));
+            }
+        }
+        return cases;
+    }
+
+    /**
+     * Creates the case starting from the board after the first move and spawn of a case.
+     *
+     * @param fuzzCase case
+     * @param ref      the reference engine
+     * @param values   buffer
+     * @return case
+     */
+    private static FuzzCase playFirst(FuzzCase fuzzCase, MoveEngine ref, int[] values) {
+        int rows = fuzzCase.getRows();
+        int cols = fuzzCase.getCols();
+        int spawn = fuzzCase.getSpawn(0);
+        ref.load(rows, cols, fuzzCase.getValues());
+        ref.move(fuzzCase.getDirection(0));
+        ref.store(values);
+        int cell = spawn == FuzzCase.NO_SPAWN ? -1 : FuzzCase.spawnCell(spawn, values, rows * cols);
+
+        if (cell != -1) {
+            values[cell] = FuzzCase.spawnValue(spawn);
+        }
+        FuzzCase played = fuzzCase.withSteps(remove(fuzzCase.getDirections(), 0), remove(fuzzCase.getSpawns(), 0));
+        return played.withBoard(rows, cols, Arrays.copyOf(values, rows * cols));
+    }
+
+    private static int[] remove(int[] array, int index) {
+        return remove(array, index, 1);
+    }
+
+    private static int[] removeRow(int[] values, int rows, int cols, int row) {
+        return remove(values, row * cols, cols);
+    }
+
+    private static int[] remove(int[] array, int index, int length) {
+        int[] result = new int[array.length - length];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + length, result, index, result.length - index);
+        return result;
+    }
+
+    private static int[] removeColumn(int[] values, int rows, int cols, int col) {
+        int[] result = new int[rows * (cols - 1)];
+
+        for (int row = 0, i = 0; row < rows; row++) {
+            for (int c = 0; c < cols; c++) {
+                if (c != col) {
+                    result[i++] = values[row * cols + c];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The buffers a thread compares boards in.
+     */
+    private static final class Workspace {
+        private final int[] expected = new int[16];
+        private final int[] actual = new int[16];
+    }
+
+    /**
+     * A failing case and the candidate it failed on.
+     */
+    private static final class Failure {
+        private final FuzzCase fuzzCase;
+        private final int candidate;
+
+        private Failure(FuzzCase fuzzCase, int candidate) {
+            this.fuzzCase = fuzzCase;
+            this.candidate = candidate;
+        }
+    }
+}
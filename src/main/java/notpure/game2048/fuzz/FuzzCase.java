@@ -0,0 +1,291 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.fuzz;
+
+import notpure.game2048.model.board.GameRandom;
+
+import java.util.Arrays;
+
+/**
+ * A board and a sequence of moves to play on it, each followed by an optional tile spawn.
+ * Spawns are chosen by index among the empty cells, so a case stays valid as it is shrunk.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class FuzzCase {
+
+    /**
+     * The spawn of no tile.
+     */
+    public static final int NO_SPAWN = -1;
+    private static final int MAX_STEPS = 32;
+    private static final String[] DIRECTION_NAMES = {"UP", "DOWN", "LEFT", "RIGHT"};
+
+    private final long seed;
+    private final int rows;
+    private final int cols;
+    private final int[] values;
+    private final int[] dirs;
+    /**
+     * The spawn after each move, {@code (empty cell index << 1) | four}, or {@link #NO_SPAWN}.
+     */
+    private final int[] spawns;
+
+    /**
+     * Constructs a new FuzzCase.
+     *
+     * @param seed   the seed it was generated from, or -1 if derived
+     * @param rows   grid rows
+     * @param cols   grid columns
+     * @param values the initial value of each cell, -1 for no tile
+     * @param dirs   the direction of each move
+     * @param spawns the spawn after each move
+     */
+    public FuzzCase(long seed, int rows, int cols, int[] values, int[] dirs, int[] spawns) {
+        if (values.length != rows * cols || dirs.length != spawns.length) {
+            throw new IllegalArgumentException("inconsistent case");
+        }
+        this.seed = seed;
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+        this.dirs = dirs;
+        this.spawns = spawns;
+    }
+
+    /**
+     * Generates a case from a seed, favouring full boards of few distinct values, where tiles combine the most.
+     *
+     * @param seed   seed
+     * @param random generator, re-seeded
+     * @return case
+     */
+    public static FuzzCase generate(long seed, GameRandom random) {
+        random.setSeed(seed);
+        boolean full = random.nextInt(2) == 0;
+        int rows = full ? 4 : 1 + random.nextInt(4);
+        int cols = full ? 4 : 1 + random.nextInt(4);
+        int[] values = new int[rows * cols];
+
+        // Tiles
+        int density = 1 + random.nextInt(4);
+        int maxExponent = random.nextInt(4) == 0 ? 13 : 1 + random.nextInt(3);
+
+        for (int cell = 0; cell < values.length; cell++) {
+            values[cell] = random.nextInt(4) < density ? 1 << (1 + random.nextInt(maxExponent)) : -1;
+        }
+
+        // Moves
+        int steps = 1 + random.nextInt(MAX_STEPS);
+        int[] dirs = new int[steps];
+        int[] spawns = new int[steps];
+
+        for (int step = 0; step < steps; step++) {
+            dirs[step] = random.nextInt(4);
+            spawns[step] = random.nextInt(4) == 0 ? NO_SPAWN : random.nextInt(16) << 1 | (random.nextInt(10) == 0 ? 1 : 0);
+        }
+        return new FuzzCase(seed, rows, cols, values, dirs, spawns);
+    }
+
+    /**
+     * Gets the value a spawn inserts.
+     *
+     * @param spawn spawn
+     * @return tile value
+     */
+    public static int spawnValue(int spawn) {
+        return (spawn & 1) == 0 ? 2 : 4;
+    }
+
+    /**
+     * Gets the cell a spawn inserts into.
+     *
+     * @param spawn  spawn
+     * @param values the value of each cell
+     * @param cells  cell count
+     * @return cell index, or -1 if there is no empty cell
+     */
+    public static int spawnCell(int spawn, int[] values, int cells) {
+        int empty = 0;
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (values[cell] == -1) {
+                empty++;
+            }
+        }
+
+        if (empty == 0) {
+            return -1;
+        }
+        int k = (spawn >>> 1) % empty;
+
+        for (int cell = 0; ; cell++) {
+            if (values[cell] == -1 && k-- == 0) {
+                return cell;
+            }
+        }
+    }
+
+    /**
+     * Creates a case of this board and the given moves.
+     *
+     * @param dirs   the direction of each move
+     * @param spawns the spawn after each move
+     * @return case
+     */
+    public FuzzCase withSteps(int[] dirs, int[] spawns) {
+        return new FuzzCase(-1, rows, cols, values, dirs, spawns);
+    }
+
+    /**
+     * Creates a case of these moves and the given board.
+     *
+     * @param rows   grid rows
+     * @param cols   grid columns
+     * @param values the initial value of each cell
+     * @return case
+     */
+    public FuzzCase withBoard(int rows, int cols, int[] values) {
+        return new FuzzCase(-1, rows, cols, values, dirs, spawns);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getSteps() {
+        return dirs.length;
+    }
+
+    public int getDirection(int step) {
+        return dirs[step];
+    }
+
+    public int getSpawn(int step) {
+        return spawns[step];
+    }
+
+    /**
+     * Gets a copy of the initial value of each cell.
+     *
+     * @return values
+     */
+    public int[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * Gets a copy of the direction of each move.
+     *
+     * @return directions
+     */
+    public int[] getDirections() {
+        return dirs.clone();
+    }
+
+    /**
+     * Gets a copy of the spawn after each move.
+     *
+     * @return spawns
+     */
+    public int[] getSpawns() {
+        return spawns.clone();
+    }
+
+    /**
+     * Appends the board as rows of values, '.' being no tile.
+     *
+     * @param sb     destination
+     * @param values the value of each cell
+     * @param rows   grid rows
+     * @param cols   grid columns
+     */
+    public static void appendBoard(StringBuilder sb, int[] values, int rows, int cols) {
+        for (int row = 0; row < rows; row++) {
+            sb.append("   ");
+
+            for (int col = 0; col < cols; col++) {
+                int value = values[row * cols + col];
+                String label = value == -1 ? "." : Integer.toString(value);
+
+                for (int pad = label.length(); pad < 6; pad++) {
+                    sb.append(' ');
+                }
+                sb.append(label);
+            }
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * Gets the name of a direction.
+     *
+     * @param dir direction
+     * @return name
+     */
+    public static String directionName(int dir) {
+        return DIRECTION_NAMES[dir];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(rows).append('x').append(cols);
+
+        if (seed != -1) {
+            sb.append(" seed ").append(Long.toHexString(seed));
+        }
+        sb.append('\n');
+        appendBoard(sb, values, rows, cols);
+        sb.append("   moves:");
+
+        for (int step = 0; step < dirs.length; step++) {
+            sb.append(' ').append(directionName(dirs[step]));
+
+            if (spawns[step] != NO_SPAWN) {
+                sb.append('+').append(spawnValue(spawns[step])).append('@').append(spawns[step] >>> 1);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof FuzzCase)) {
+            return false;
+        }
+        FuzzCase other = (FuzzCase) obj;
+        return rows == other.rows && cols == other.cols && Arrays.equals(values, other.values)
+                && Arrays.equals(dirs, other.dirs) && Arrays.equals(spawns, other.spawns);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(values) + Arrays.hashCode(dirs)) + Arrays.hashCode(spawns);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.fuzz;
+
+/**
+ * An implementation of the move rules, driven by the {@link DifferentialFuzzer} through cell values so that
+ * engines of any board representation can be compared. Instances are used by one thread.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public interface MoveEngine {
+
+    /**
+     * Gets the name of this engine, for reports.
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * Gets the largest tile value this engine supports, boards reaching it being left unexplored.
+     *
+     * @return max value
+     */
+    int getMaxValue();
+
+    /**
+     * Sets up a board.
+     *
+     * @param rows   grid rows, 1 to 4
+     * @param cols   grid columns, 1 to 4
+     * @param values the value of each cell ({@code row * cols + col}), -1 for no tile
+     */
+    void load(int rows, int cols, int[] values);
+
+    /**
+     * Shifts and combines the tiles, without inserting a random tile. As on the grid, UP and DOWN move tiles along
+     * a row towards its first and last column, LEFT and RIGHT along a column towards its first and last row.
+     *
+     * @param dir {@link notpure.game2048.model.tile.TileGrid.Direction} ordinal
+     * @return the score gained
+     */
+    int move(int dir);
+
+    /**
+     * Sets the value of a cell.
+     *
+     * @param cell  cell index
+     * @param value tile value, -1 for no tile
+     */
+    void set(int cell, int value);
+
+    /**
+     * Copies the value of each cell.
+     *
+     * @param values destination, -1 for no tile
+     */
+    void store(int[] values);
+
+    /**
+     * Checks if a move can be made.
+     *
+     * @return whether or not a move can be made
+     */
+    boolean hasMoves();
+}
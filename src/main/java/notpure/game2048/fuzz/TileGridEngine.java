@@ -0,0 +1,92 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.fuzz;
+
+import notpure.game2048.Game;
+import notpure.game2048.model.tile.TileGrid;
+
+/**
+ * The reference engine: the {@link TileGrid} the game is played on, with its {@link notpure.game2048.model.tile.Tile}
+ * objects and their combined flags.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class TileGridEngine implements MoveEngine {
+
+    private static final TileGrid.Direction[] DIRECTIONS = TileGrid.Direction.values();
+
+    private final Game game = new Game();
+    /**
+     * A grid of each size, created when first used.
+     */
+    private final TileGrid[] grids = new TileGrid[25];
+    private TileGrid grid;
+    private int cells;
+
+    @Override
+    public String getName() {
+        return "TileGrid";
+    }
+
+    @Override
+    public int getMaxValue() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void load(int rows, int cols, int[] values) {
+        int shape = rows * 5 + cols;
+
+        if (grids[shape] == null) {
+            grids[shape] = new TileGrid(game, rows, cols);
+            grids[shape].reset();
+        }
+        grid = grids[shape];
+        cells = rows * cols;
+
+        for (int cell = 0; cell < cells; cell++) {
+            grid.setValue(cell, values[cell]);
+        }
+    }
+
+    @Override
+    public int move(int dir) {
+        int score = game.getScore();
+        grid.move(DIRECTIONS[dir]);
+        return game.getScore() - score;
+    }
+
+    @Override
+    public void set(int cell, int value) {
+        grid.setValue(cell, value);
+    }
+
+    @Override
+    public void store(int[] values) {
+        for (int cell = 0; cell < cells; cell++) {
+            values[cell] = grid.getValue(cell);
+        }
+    }
+
+    @Override
+    public boolean hasMoves() {
+        return grid.hasMoves();
+    }
+}
@@ -22,10 +22,12 @@ import org.newdawn.slick.Color;
 
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
- * Loads the colour scheme of the game from a resource file.
+ * Loads the colour scheme of the game from a resource file. The colours are kept as packed 0xRRGGBB values,
+ * the Slick2D colours being made from them on first use, so headless renderers never load Slick2D.
  *
  * @author Pure <https://github.com/purecs>
  */
@@ -41,17 +43,28 @@ public final class ColourScheme {
      */
     public static int TEXT_COLOUR_IDX = 1;
     /**
-     * A mapping of tile value to colour scheme.
+     * The resource holding the colour scheme of the game.
      */
-    private static HashMap<Integer, Color[]> COLOURS = new HashMap<>();
+    private static final String DEFAULT_RESOURCE = "/notpure/game2048/model/styles.txt";
     /**
-     * The background color.
+     * A mapping of tile value to colour scheme, as packed 0xRRGGBB values.
      */
-    private static Color BACKGROUND_COLOR = null;
+    private static HashMap<Integer, int[]> RGB_COLOURS = new HashMap<>();
     /**
-     * The colour to be used when drawing the score items.
+     * The background colour, as a packed 0xRRGGBB value.
      */
-    private static Color SCORE_TEXT_COLOR = null;
+    private static int BACKGROUND_RGB = 0;
+    /**
+     * The colour to be used when drawing the score items, as a packed 0xRRGGBB value.
+     */
+    private static int SCORE_TEXT_RGB = 0;
+
+    /**
+     * Loads the colour scheme of the game.
+     */
+    public static void loadDefault() {
+        load(ColourScheme.class.getResourceAsStream(DEFAULT_RESOURCE));
+    }
 
     public static void load(InputStream inputStream) {
         Scanner in = new Scanner(inputStream);
@@ -75,25 +88,20 @@ public final class ColourScheme {
 
         switch (key) {
             case "BackgroundColor":
-                BACKGROUND_COLOR = parseColor(value);
+                BACKGROUND_RGB = parseRgb(value);
                 break;
             case "ScoreTextColor":
-                SCORE_TEXT_COLOR = parseColor(value);
+                SCORE_TEXT_RGB = parseRgb(value);
                 break;
             case "TileTextColor":
                 String[] values = value.split(" ");
                 int tileValue = Integer.parseInt(values[0]);
-
-                // Insert into map
-                COLOURS.put(tileValue, new Color[]{
-                        parseColor(values[1]),
-                        parseColor(values[2])
-                });
+                RGB_COLOURS.put(tileValue, new int[]{parseRgb(values[1]), parseRgb(values[2])});
                 break;
         }
     }
 
-    private static Color parseColor(String s) {
+    private static int parseRgb(String s) {
         // Remove syntactical components
         if (s.startsWith("rgb("))
             s = s.substring(4);
@@ -109,7 +117,7 @@ public final class ColourScheme {
         int r = Integer.parseInt(frag[0].trim());
         int g = Integer.parseInt(frag[1].trim());
         int b = Integer.parseInt(frag[2].trim());
-        return new Color(r, g, b);
+        return (r << 16) | (g << 8) | b;
     }
 
     private static boolean isEntryLine(String s) {
@@ -123,14 +131,82 @@ public final class ColourScheme {
      * @return colour scheme
      */
     public static Color[] getColourScheme(int value) {
-        return COLOURS.containsKey(value) ? COLOURS.get(value) : null;
+        int exponent = exponent(value);
+
+        if (exponent != -1)
+            return SlickColours.COLOUR_TABLE[exponent];
+        return SlickColours.COLOURS.get(value);
+    }
+
+    /**
+     * Gets the index of the given tile value into {@link SlickColours#COLOUR_TABLE}.
+     *
+     * @param value tile value
+     * @return exponent, 0 for the empty tile, or -1 if the value is not a power of two above 1
+     */
+    private static int exponent(int value) {
+        if (value == -1)
+            return 0;
+        return value > 1 && Integer.bitCount(value) == 1 ? Integer.numberOfTrailingZeros(value) : -1;
+    }
+
+    /**
+     * Gets the colour scheme associated with the given value, as packed 0xRRGGBB values.
+     * Unlike {@link #getColourScheme(int)} this does not load any Slick2D type, for headless rendering.
+     *
+     * @param value tile value
+     * @return colour scheme
+     */
+    public static int[] getRgbColourScheme(int value) {
+        return RGB_COLOURS.get(value);
+    }
+
+    public static int getBackgroundRgb() {
+        return BACKGROUND_RGB;
+    }
+
+    public static int getScoreTextRgb() {
+        return SCORE_TEXT_RGB;
     }
 
     public static Color getBackgroundColor() {
-        return BACKGROUND_COLOR;
+        return SlickColours.BACKGROUND_COLOR;
     }
 
     public static Color getScoreTextColor() {
-        return SCORE_TEXT_COLOR;
+        return SlickColours.SCORE_TEXT_COLOR;
+    }
+
+    /**
+     * The Slick2D colours, made from the loaded scheme when first used.
+     */
+    private static final class SlickColours {
+
+        /**
+         * A mapping of tile value to colour scheme.
+         */
+        private static final HashMap<Integer, Color[]> COLOURS = new HashMap<>();
+        /**
+         * The colour schemes of the empty tile and the powers of two, indexed by exponent (0 being the empty tile).
+         */
+        private static final Color[][] COLOUR_TABLE = new Color[Integer.SIZE][];
+        private static final Color BACKGROUND_COLOR = toColor(BACKGROUND_RGB);
+        private static final Color SCORE_TEXT_COLOR = toColor(SCORE_TEXT_RGB);
+
+        static {
+            for (Map.Entry<Integer, int[]> entry : RGB_COLOURS.entrySet()) {
+                int[] rgb = entry.getValue();
+                Color[] colours = {toColor(rgb[TILE_COLOUR_IDX]), toColor(rgb[TEXT_COLOUR_IDX])};
+                COLOURS.put(entry.getKey(), colours);
+                int exponent = exponent(entry.getKey());
+
+                if (exponent != -1)
+                    COLOUR_TABLE[exponent] = colours;
+            }
+        }
+
+        private static Color toColor(int rgb) {
+            return new Color((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+        }
     }
 }
@@ -0,0 +1,514 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.model.board;
+
+import notpure.game2048.model.tile.TileGrid;
+
+/**
+ * The {@link TileGrid} rules on boards packed into a single long, for headless simulation and search.
+ * <p>
+ * Each cell ({@code row * cols + col}, as in TileGrid) takes 4 bits holding the power of two of its value,
+ * 0 meaning no tile, so grids of up to 4x4 cells with tiles up to 32768 fit. Moves reproduce TileGrid exactly:
+ * tiles are shifted first, then combined by repeated scans from the back of each line, a tile combined
+ * this move only combining with another tile combined this move, and no shift happens after combining.
+ * The one difference is that two 32768 tiles are never combined, as 65536 does not fit in a cell.
+ * <p>
+ * Lines are looked up in precomputed tables, shared by all instances, so a move costs a few table lookups.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class BoardRules {
+
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+    /**
+     * The largest power of two a cell can hold.
+     */
+    public static final int MAX_EXPONENT = 15;
+    /**
+     * The probability of an inserted tile being a 2 rather than a 4, as {@code nextInt(100) > 30} in
+     * {@link #spawn(long, GameRandom)}.
+     */
+    public static final double TWO_PROBABILITY = 0.69;
+    /**
+     * The line tables by line length, index 0 unused.
+     */
+    private static final LineTable[] LINE_TABLES = new LineTable[5];
+
+    private final int rows;
+    private final int cols;
+    private final int cells;
+    /**
+     * The mask of all bits in use.
+     */
+    private final long boardMask;
+    /**
+     * The mask of the lowest bit of every cell.
+     */
+    private final long cellLowBits;
+    /**
+     * The lines along the column index, moved by UP and DOWN.
+     */
+    private final LineTable rowLines;
+    /**
+     * The lines along the row index, moved by LEFT and RIGHT.
+     */
+    private final LineTable colLines;
+
+    /**
+     * Constructs a new BoardRules.
+     *
+     * @param rows TileGrid rows, at most 4
+     * @param cols TileGrid columns, at most 4
+     */
+    public BoardRules(int rows, int cols) {
+        if (rows < 1 || rows > 4 || cols < 1 || cols > 4) {
+            throw new IllegalArgumentException("Packed boards support up to 4x4 cells: " + rows + "x" + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        cells = rows * cols;
+        boardMask = cells == 16 ? -1L : (1L << (4 * cells)) - 1;
+        cellLowBits = 0x1111111111111111L & boardMask;
+        rowLines = lineTable(cols);
+        colLines = lineTable(rows);
+    }
+
+    private static synchronized LineTable lineTable(int length) {
+        if (LINE_TABLES[length] == null) {
+            LINE_TABLES[length] = new LineTable(length);
+        }
+        return LINE_TABLES[length];
+    }
+
+    /**
+     * Moves the tiles in the given direction, without inserting a random tile.
+     *
+     * @param board board
+     * @param dir   {@link TileGrid.Direction} ordinal
+     * @return moved board
+     */
+    public long move(long board, int dir) {
+        long result = 0;
+
+        switch (dir) {
+            case UP:
+            case DOWN:
+                for (int row = 0; row < rows; row++) {
+                    int shift = 4 * row * cols;
+                    int line = (int) ((board >>> shift) & rowLines.mask);
+                    int moved = dir == UP ? rowLines.forward[line] : rowLines.reverse[line];
+                    result |= (long) moved << shift;
+                }
+                break;
+            case LEFT:
+            case RIGHT:
+                for (int col = 0; col < cols; col++) {
+                    int line = gatherColumn(board, col);
+                    int moved = dir == LEFT ? colLines.forward[line] : colLines.reverse[line];
+                    result |= scatterColumn(moved, col);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown direction: " + dir);
+        }
+        return result;
+    }
+
+    /**
+     * Moves the tiles in the given direction, without inserting a random tile.
+     *
+     * @param board board
+     * @param dir   direction
+     * @return moved board
+     */
+    public long move(long board, TileGrid.Direction dir) {
+        return move(board, dir.ordinal());
+    }
+
+    /**
+     * Gets the score gained by moving in the given direction.
+     *
+     * @param board board
+     * @param dir   {@link TileGrid.Direction} ordinal
+     * @return score
+     */
+    public int moveScore(long board, int dir) {
+        int score = 0;
+
+        switch (dir) {
+            case UP:
+            case DOWN:
+                for (int row = 0; row < rows; row++) {
+                    int line = (int) ((board >>> (4 * row * cols)) & rowLines.mask);
+                    score += dir == UP ? rowLines.score[line] : rowLines.reverseScore[line];
+                }
+                break;
+            case LEFT:
+            case RIGHT:
+                for (int col = 0; col < cols; col++) {
+                    int line = gatherColumn(board, col);
+                    score += dir == LEFT ? colLines.score[line] : colLines.reverseScore[line];
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown direction: " + dir);
+        }
+        return score;
+    }
+
+    private int gatherColumn(long board, int col) {
+        int line = 0;
+
+        for (int row = 0; row < rows; row++) {
+            line |= (int) ((board >>> (4 * (row * cols + col))) & 0xF) << (4 * row);
+        }
+        return line;
+    }
+
+    private long scatterColumn(int line, int col) {
+        long result = 0;
+
+        for (int row = 0; row < rows; row++) {
+            result |= (long) ((line >>> (4 * row)) & 0xF) << (4 * (row * cols + col));
+        }
+        return result;
+    }
+
+    /**
+     * Inserts a random tile exactly as {@link TileGrid#insertRandomTile()} does with the same generator state.
+     *
+     * @param board  board with at least one free cell
+     * @param random generator
+     * @return board with the tile inserted
+     */
+    public long spawn(long board, GameRandom random) {
+        int idx = random.nextInt(emptyCells(board));
+        int exponent = random.nextInt(100) > 30 ? 1 : 2;
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (getExponent(board, cell) == 0 && idx-- == 0) {
+                return setExponent(board, cell, exponent);
+            }
+        }
+        throw new IllegalStateException("No free cell");
+    }
+
+    /**
+     * Performs a move as {@link TileGrid#performMove(TileGrid.Direction)} does: moves, then inserts a
+     * random tile if there is a free cell. The caller checks {@link #hasMoves(long)} beforehand.
+     *
+     * @param board  board
+     * @param dir    {@link TileGrid.Direction} ordinal
+     * @param random generator
+     * @return resulting board
+     */
+    public long performMove(long board, int dir, GameRandom random) {
+        long moved = move(board, dir);
+        return emptyCells(moved) > 0 ? spawn(moved, random) : moved;
+    }
+
+    /**
+     * Creates the board of a newly reset game: one random tile.
+     *
+     * @param random generator
+     * @return board
+     */
+    public long newGame(GameRandom random) {
+        return spawn(0, random);
+    }
+
+    /**
+     * Counts the free cells.
+     *
+     * @param board board
+     * @return free cells
+     */
+    public int emptyCells(long board) {
+        long occupied = (board | (board >>> 1) | (board >>> 2) | (board >>> 3)) & cellLowBits;
+        return cells - Long.bitCount(occupied);
+    }
+
+    /**
+     * Checks if a move in the given direction can be made. As {@link TileGrid#performMove(TileGrid.Direction)}
+     * inserts a tile even if nothing moved, a move is only pointless when it leaves no free cell: moving a full
+     * board without combining tiles does nothing.
+     *
+     * @param board board
+     * @param dir   {@link TileGrid.Direction} ordinal
+     * @return whether or not the move can be made
+     */
+    public boolean canMove(long board, int dir) {
+        // Moving never fills a free cell, so only full boards need moving
+        return emptyCells(board) > 0 || emptyCells(move(board, dir)) > 0;
+    }
+
+    /**
+     * Checks if a move can be made, as {@link TileGrid#hasMoves()} does.
+     *
+     * @param board board
+     * @return whether or not a move can be made
+     */
+    public boolean hasMoves(long board) {
+        if (emptyCells(board) > 0) {
+            return true;
+        }
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int exponent = getExponent(board, row * cols + col);
+
+                if ((col + 1 < cols && exponent == getExponent(board, row * cols + col + 1) && exponent < MAX_EXPONENT)
+                        || (row + 1 < rows && exponent == getExponent(board, (row + 1) * cols + col) && exponent < MAX_EXPONENT)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the power of two held by a cell.
+     *
+     * @param board board
+     * @param cell  cell index
+     * @return exponent, 0 for no tile
+     */
+    public static int getExponent(long board, int cell) {
+        return (int) ((board >>> (4 * cell)) & 0xF);
+    }
+
+    /**
+     * Sets the power of two held by a cell.
+     *
+     * @param board    board
+     * @param cell     cell index
+     * @param exponent exponent, 0 for no tile
+     * @return updated board
+     */
+    public static long setExponent(long board, int cell, int exponent) {
+        int shift = 4 * cell;
+        return (board & ~(0xFL << shift)) | ((long) exponent << shift);
+    }
+
+    /**
+     * Gets the value of a cell, as {@link TileGrid#getValue(int)} does.
+     *
+     * @param board board
+     * @param cell  cell index
+     * @return tile value, -1 for no tile
+     */
+    public static int getValue(long board, int cell) {
+        int exponent = getExponent(board, cell);
+        return exponent == 0 ? -1 : 1 << exponent;
+    }
+
+    /**
+     * Packs cell values into a board.
+     *
+     * @param values the value of each cell, -1 for no tile
+     * @return board
+     */
+    public long encode(int[] values) {
+        long board = 0;
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (values[cell] != -1) {
+                board = setExponent(board, cell, Integer.numberOfTrailingZeros(values[cell]));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Packs the current state of a grid into a board.
+     *
+     * @param grid grid of this size
+     * @return board
+     */
+    public long encode(TileGrid grid) {
+        long board = 0;
+
+        for (int cell = 0; cell < cells; cell++) {
+            int value = grid.getValue(cell);
+
+            if (value != -1) {
+                board = setExponent(board, cell, Integer.numberOfTrailingZeros(value));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Unpacks a board into cell values.
+     *
+     * @param board  board
+     * @param values destination, the value of each cell, -1 for no tile
+     */
+    public void decode(long board, int[] values) {
+        for (int cell = 0; cell < cells; cell++) {
+            values[cell] = getValue(board, cell);
+        }
+    }
+
+    /**
+     * Gets the largest tile value on the board.
+     *
+     * @param board board
+     * @return largest value, -1 for an empty board
+     */
+    public int maxValue(long board) {
+        int max = 0;
+
+        for (int cell = 0; cell < cells; cell++) {
+            max = Math.max(max, getExponent(board, cell));
+        }
+        return max == 0 ? -1 : 1 << max;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getCells() {
+        return cells;
+    }
+
+    public long getBoardMask() {
+        return boardMask;
+    }
+
+    /**
+     * The moves of every possible line of one length, front of the line in the lowest bits.
+     */
+    private static final class LineTable {
+
+        private final int length;
+        private final int mask;
+        /**
+         * The moved line, towards the lowest bits.
+         */
+        private final int[] forward;
+        /**
+         * The moved line, towards the highest bits.
+         */
+        private final int[] reverse;
+        /**
+         * The score of moving a line towards the lowest bits.
+         */
+        private final int[] score;
+        /**
+         * The score of moving a line towards the highest bits.
+         */
+        private final int[] reverseScore;
+
+        private LineTable(int length) {
+            this.length = length;
+            mask = (1 << (4 * length)) - 1;
+            forward = new int[mask + 1];
+            reverse = new int[mask + 1];
+            score = new int[mask + 1];
+            reverseScore = new int[mask + 1];
+            int[] exponents = new int[length];
+            boolean[] combined = new boolean[length];
+
+            for (int line = 0; line <= mask; line++) {
+                for (int i = 0; i < length; i++) {
+                    exponents[i] = (line >>> (4 * i)) & 0xF;
+                }
+                score[line] = moveLine(exponents, combined);
+                int moved = 0;
+
+                for (int i = 0; i < length; i++) {
+                    moved |= exponents[i] << (4 * i);
+                }
+                forward[line] = moved;
+            }
+
+            for (int line = 0; line <= mask; line++) {
+                reverse[line] = reverseLine(forward[reverseLine(line)]);
+                reverseScore[line] = score[reverseLine(line)];
+            }
+        }
+
+        /**
+         * Moves a line towards index 0, mirroring TileGrid's shiftTiles and combineTiles.
+         *
+         * @param exponents line, updated in place
+         * @param combined  scratch buffer for the combined flags
+         * @return score gained
+         */
+        private static int moveLine(int[] exponents, boolean[] combined) {
+            int length = exponents.length;
+
+            // Shifting, stable
+            int filled = 0;
+
+            for (int i = 0; i < length; i++) {
+                if (exponents[i] != 0) {
+                    exponents[filled++] = exponents[i];
+                }
+            }
+
+            for (int i = filled; i < length; i++) {
+                exponents[i] = 0;
+            }
+
+            // Combining, scanning from the back until nothing changes
+            int score = 0;
+            boolean swapped = true;
+
+            for (int i = 0; i < length; i++) {
+                combined[i] = false;
+            }
+
+            while (swapped) {
+                swapped = false;
+
+                for (int i = length - 1; i > 0; i--) {
+                    if (exponents[i - 1] != 0 && exponents[i - 1] < MAX_EXPONENT
+                            && exponents[i - 1] == exponents[i] && combined[i - 1] == combined[i]) {
+                        exponents[i - 1]++;
+                        exponents[i] = 0;
+                        combined[i - 1] = true;
+                        combined[i] = true;
+                        score += 1 << exponents[i - 1];
+                        swapped = true;
+                    }
+                }
+            }
+            return score;
+        }
+
+        private int reverseLine(int line) {
+            int reversed = 0;
+
+            for (int i = 0; i < length; i++) {
+                reversed |= ((line >>> (4 * i)) & 0xF) << (4 * (length - 1 - i));
+            }
+            return reversed;
+        }
+    }
+}
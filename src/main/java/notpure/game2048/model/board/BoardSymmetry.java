@@ -0,0 +1,281 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.model.board;
+
+/**
+ * The symmetries of a grid, for storing one entry per class of equivalent boards in caches and tables.
+ * <p>
+ * A square grid has 8 symmetries: the rotations and reflections, a rectangular grid only the 4 reflections.
+ * Symmetry {@code s} transposes if bit 2 is set, then mirrors the column index if bit 0 is set and the row
+ * index if bit 1 is set. As the {@link BoardRules} moves are the same along every line in both directions,
+ * moving a transformed board in the mapped direction gives the transformed result with the same score:
+ * {@code apply(rules.move(board, dir), s) == rules.move(apply(board, s), mapMove(dir, s))}.
+ * <p>
+ * 4x4 boards are transformed with a few masks and shifts, other sizes a byte (two cells) at a time through
+ * lookup tables.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class BoardSymmetry {
+
+    private static final int MIRROR_COLS = 1;
+    private static final int MIRROR_ROWS = 2;
+    private static final int TRANSPOSE = 4;
+
+    private final BoardRules rules;
+    private final int count;
+    /**
+     * Whether or not the 4x4 masks and shifts are used.
+     */
+    private final boolean packed;
+    /**
+     * The destination of each cell, by symmetry.
+     */
+    private final int[][] cellMaps;
+    /**
+     * The transformed bits of every value of every byte of a board, by symmetry, for grids other than 4x4.
+     */
+    private final long[][] byteMaps;
+    private final int byteCount;
+    /**
+     * The mapped direction of each direction, by symmetry.
+     */
+    private final int[][] moveMaps;
+    private final int[] inverses;
+
+    /**
+     * Constructs a new BoardSymmetry.
+     *
+     * @param rules rules of the grid
+     */
+    public BoardSymmetry(BoardRules rules) {
+        this.rules = rules;
+        int rows = rules.getRows();
+        int cols = rules.getCols();
+        count = rows == cols ? 8 : 4;
+        packed = rows == 4 && cols == 4;
+        cellMaps = new int[count][rules.getCells()];
+        moveMaps = new int[count][4];
+        inverses = new int[count];
+
+        for (int s = 0; s < count; s++) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    int r = (s & TRANSPOSE) != 0 ? col : row;
+                    int c = (s & TRANSPOSE) != 0 ? row : col;
+                    r = (s & MIRROR_ROWS) != 0 ? rows - 1 - r : r;
+                    c = (s & MIRROR_COLS) != 0 ? cols - 1 - c : c;
+                    cellMaps[s][row * cols + col] = r * cols + c;
+                }
+            }
+
+            for (int dir = 0; dir < 4; dir++) {
+                moveMaps[s][dir] = mapDirection(dir, s);
+            }
+        }
+
+        // Tabulating the transformation of each byte
+        byteCount = (rules.getCells() + 1) / 2;
+        byteMaps = packed ? null : new long[count][byteCount * 256];
+
+        for (int s = 0; s < count && !packed; s++) {
+            for (int i = 0; i < byteCount * 256; i++) {
+                long bits = (long) (i & 0xFF) << (8 * (i >>> 8));
+
+                for (int cell = 0; cell < rules.getCells(); cell++) {
+                    byteMaps[s][i] |= (long) BoardRules.getExponent(bits, cell) << (4 * cellMaps[s][cell]);
+                }
+            }
+        }
+
+        // Finding the symmetry undoing each one
+        for (int s = 0; s < count; s++) {
+            for (int t = 0; t < count; t++) {
+                boolean identity = true;
+
+                for (int cell = 0; cell < rules.getCells(); cell++) {
+                    identity &= cellMaps[t][cellMaps[s][cell]] == cell;
+                }
+
+                if (identity) {
+                    inverses[s] = t;
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a direction: UP and DOWN move along the column index towards 0 and away from it, LEFT and RIGHT
+     * along the row index.
+     */
+    private static int mapDirection(int dir, int s) {
+        boolean alongCols = dir == BoardRules.UP || dir == BoardRules.DOWN;
+        boolean towardsZero = dir == BoardRules.UP || dir == BoardRules.LEFT;
+
+        if ((s & TRANSPOSE) != 0) {
+            alongCols = !alongCols;
+        }
+
+        if ((s & (alongCols ? MIRROR_COLS : MIRROR_ROWS)) != 0) {
+            towardsZero = !towardsZero;
+        }
+
+        if (alongCols) {
+            return towardsZero ? BoardRules.UP : BoardRules.DOWN;
+        }
+        return towardsZero ? BoardRules.LEFT : BoardRules.RIGHT;
+    }
+
+    /**
+     * Transforms a board.
+     *
+     * @param board    board
+     * @param symmetry symmetry, below {@link #getCount()}
+     * @return transformed board
+     */
+    public long apply(long board, int symmetry) {
+        if (packed) {
+            long result = (symmetry & TRANSPOSE) != 0 ? transpose(board) : board;
+
+            if ((symmetry & MIRROR_COLS) != 0) {
+                result = mirrorCols(result);
+            }
+            return (symmetry & MIRROR_ROWS) != 0 ? mirrorRows(result) : result;
+        }
+        long[] byteMap = byteMaps[symmetry];
+        long result = 0;
+
+        for (int i = 0; i < byteCount; i++) {
+            result |= byteMap[(i << 8) | (int) ((board >>> (8 * i)) & 0xFF)];
+        }
+        return result;
+    }
+
+    /**
+     * Maps a move on a board to the equivalent move on the transformed board.
+     *
+     * @param dir      {@link notpure.game2048.model.tile.TileGrid.Direction} ordinal
+     * @param symmetry symmetry
+     * @return direction on the transformed board
+     */
+    public int mapMove(int dir, int symmetry) {
+        return moveMaps[symmetry][dir];
+    }
+
+    /**
+     * Gets the symmetry undoing another.
+     *
+     * @param symmetry symmetry
+     * @return inverse symmetry
+     */
+    public int inverse(int symmetry) {
+        return inverses[symmetry];
+    }
+
+    /**
+     * Gets the representative of a board's class: the smallest of its transformations.
+     *
+     * @param board board
+     * @return canonical board
+     */
+    public long canonical(long board) {
+        long min = board;
+
+        for (int s = 1; s < count; s++) {
+            min = Math.min(min, apply(board, s));
+        }
+        return min;
+    }
+
+    /**
+     * Gets the symmetry transforming a board into its canonical board. A move chosen on the canonical board
+     * is played on the board itself as {@code mapMove(dir, inverse(symmetry))}.
+     *
+     * @param board board
+     * @return symmetry
+     */
+    public int canonicalSymmetry(long board) {
+        long min = board;
+        int symmetry = 0;
+
+        for (int s = 1; s < count; s++) {
+            long transformed = apply(board, s);
+
+            if (transformed < min) {
+                min = transformed;
+                symmetry = s;
+            }
+        }
+        return symmetry;
+    }
+
+    /**
+     * Gets the amount of symmetries, 8 for square grids and 4 otherwise.
+     *
+     * @return symmetry count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public BoardRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Transposes a 4x4 board, swapping rows and columns.
+     *
+     * @param board board
+     * @return transposed board
+     */
+    public static long transpose(long board) {
+        long a = (board & 0xF0F00F0FF0F00F0FL)
+                | ((board & 0x0000F0F00000F0F0L) << 12)
+                | ((board >>> 12) & 0x0000F0F00000F0F0L);
+        return (a & 0xFF00FF0000FF00FFL)
+                | ((a & 0x00FF00FF00000000L) >>> 24)
+                | ((a & 0x00000000FF00FF00L) << 24);
+    }
+
+    /**
+     * Mirrors the column index of a 4x4 board, reversing the cells of each row.
+     *
+     * @param board board
+     * @return mirrored board
+     */
+    public static long mirrorCols(long board) {
+        return ((board >>> 12) & 0x000F000F000F000FL)
+                | ((board >>> 4) & 0x00F000F000F000F0L)
+                | ((board << 4) & 0x0F000F000F000F00L)
+                | ((board << 12) & 0xF000F000F000F000L);
+    }
+
+    /**
+     * Mirrors the row index of a 4x4 board, reversing the order of its rows.
+     *
+     * @param board board
+     * @return mirrored board
+     */
+    public static long mirrorRows(long board) {
+        return (board >>> 48)
+                | ((board >>> 16) & 0x00000000FFFF0000L)
+                | ((board << 16) & 0x0000FFFF00000000L)
+                | (board << 48);
+    }
+}
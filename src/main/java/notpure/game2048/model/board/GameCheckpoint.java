@@ -0,0 +1,172 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.model.board;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Checkpoints of a {@link GameStore}: every game's board, score, move count and random generator state, so that
+ * restored games carry on exactly as they would have.
+ * <p>
+ * File layout, little-endian: a {@value #HEADER_SIZE} byte header ({@code magic, version, rows, cols, capacity,
+ * active games, block games}, all i32, and 4 reserved bytes), then blocks of up to {@code block games} games by
+ * id, each holding the i64 boards, the i32 scores, the i32 move counts and the i64 generator states of its games
+ * as contiguous columns. A block is written with one gathering write and read back by mapping it, the columns
+ * being copied in bulk to and from the store's arrays.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class GameCheckpoint {
+
+    static final int MAGIC = 0x4732434B;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    /**
+     * The games in a block, bounding the write buffers to 24 MiB.
+     */
+    static final int BLOCK_GAMES = 1 << 20;
+    /**
+     * The bytes used by one game in a checkpoint.
+     */
+    public static final int BYTES_PER_GAME = 8 + 4 + 4 + 8;
+
+    private GameCheckpoint() {
+    }
+
+    /**
+     * Writes a checkpoint of a store to a file, replacing it atomically once written and flushed to the device.
+     *
+     * @param store store, not modified while being written
+     * @param file  destination
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(GameStore store, Path file) throws IOException {
+        int capacity = store.getCapacity();
+        int blockGames = Math.max(1, Math.min(BLOCK_GAMES, capacity));
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putInt(store.getRules().getRows()).putInt(store.getRules().getCols())
+                .putInt(capacity).putInt(store.getActiveCount()).putInt(blockGames).putInt(0);
+        header.flip();
+
+        // The header goes out with the first block, after which it has nothing remaining
+        ByteBuffer boards = column(8 * blockGames);
+        ByteBuffer scores = column(4 * blockGames);
+        ByteBuffer moveCounts = column(4 * blockGames);
+        ByteBuffer randomStates = column(8 * blockGames);
+        ByteBuffer[] buffers = {header, boards, scores, moveCounts, randomStates};
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int start = 0; start < capacity; start += blockGames) {
+                int count = Math.min(blockGames, capacity - start);
+                boards.clear().limit(8 * count);
+                boards.asLongBuffer().put(store.boards, start, count);
+                scores.clear().limit(4 * count);
+                scores.asIntBuffer().put(store.scores, start, count);
+                moveCounts.clear().limit(4 * count);
+                moveCounts.asIntBuffer().put(store.moveCounts, start, count);
+                randomStates.clear().limit(8 * count);
+                randomStates.asLongBuffer().put(store.randomStates, start, count);
+
+                while (randomStates.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+
+            // An empty store is only the header
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer column(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Restores a store from a checkpoint file, its games keeping their ids. Unlike the original store, the restored
+     * store hands out the lowest free ids first.
+     *
+     * @param file file
+     * @return store
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static GameStore read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // Reading the whole header
+            }
+
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a version " + VERSION + " game checkpoint: " + file);
+            }
+            int rows = header.getInt(8);
+            int cols = header.getInt(12);
+            int capacity = header.getInt(16);
+            int activeCount = header.getInt(20);
+            int blockGames = header.getInt(24);
+
+            if (rows < 1 || rows > 4 || cols < 1 || cols > 4) {
+                throw new IOException("Game checkpoint grid size " + rows + "x" + cols + " is not supported: " + file);
+            }
+
+            if (capacity < 0 || blockGames <= 0 || blockGames > BLOCK_GAMES
+                    || channel.size() != HEADER_SIZE + (long) BYTES_PER_GAME * capacity) {
+                throw new IOException("Game checkpoint size does not match its header: " + file);
+            }
+            GameStore store = new GameStore(new BoardRules(rows, cols), capacity);
+            long position = HEADER_SIZE;
+
+            for (int start = 0; start < capacity; start += blockGames) {
+                int count = Math.min(blockGames, capacity - start);
+                ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) BYTES_PER_GAME * count)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                block.asLongBuffer().get(store.boards, start, count);
+                block.position(8 * count);
+                block.asIntBuffer().get(store.scores, start, count);
+                block.position(12 * count);
+                block.asIntBuffer().get(store.moveCounts, start, count);
+                block.position(16 * count);
+                block.asLongBuffer().get(store.randomStates, start, count);
+                position += (long) BYTES_PER_GAME * count;
+            }
+            store.reclaimFreeIds();
+
+            if (store.getActiveCount() != activeCount) {
+                throw new IOException("Game checkpoint active games do not match its header: " + file);
+            }
+            return store;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.model.board;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Fills a {@link GameStore} with games part way through, checkpoints it with {@link GameCheckpoint}, restores it and
+ * checks that the restored games carry on as the originals do.
+ * <p>
+ * Usage: {@code GameCheckpointBenchmark [games] [file]}, the file being deleted afterwards unless given.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class GameCheckpointBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Path file = args.length > 1 ? Paths.get(args[1]) : Files.createTempFile("game2048", ".checkpoint");
+
+        // Games of different lengths, with every 8th id released
+        BoardRules rules = new BoardRules(4, 4);
+        GameStore store = new GameStore(rules, games);
+        GameRandom random = new GameRandom(0);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < games; i++) {
+            int id = store.create(GameRandom.mix(i), random);
+
+            for (int move = 0; move < i % 16; move++) {
+                store.move(id, move & 3, random);
+            }
+        }
+
+        for (int id = 0; id < games; id += 8) {
+            store.release(id);
+        }
+        System.out.printf("Filled %d games (%d active) in %.2fs%n", games, store.getActiveCount(),
+                (System.nanoTime() - start) / 1e9);
+
+        // Checkpointing and restoring
+        start = System.nanoTime();
+        GameCheckpoint.write(store, file);
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+        long size = Files.size(file);
+        start = System.nanoTime();
+        GameStore restored = GameCheckpoint.read(file);
+        double readSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Checkpoint of %d bytes: written in %.2fs (%.0f MB/s), restored in %.2fs (%.0f MB/s)%n",
+                size, writeSeconds, size / writeSeconds / 1e6, readSeconds, size / readSeconds / 1e6);
+
+        // Playing on from both
+        GameRandom other = new GameRandom(0);
+        int mismatches = restored.getActiveCount() == store.getActiveCount() ? 0 : 1;
+
+        for (int id = 0; id < games; id++) {
+            if (store.isActive(id)) {
+                store.move(id, id & 3, random);
+                restored.move(id, id & 3, other);
+            }
+
+            if (store.getBoard(id) != restored.getBoard(id) || store.getScore(id) != restored.getScore(id)
+                    || store.getMoveCount(id) != restored.getMoveCount(id)
+                    || store.getRandomState(id) != restored.getRandomState(id)) {
+                mismatches++;
+            }
+        }
+        System.out.printf("%d mismatches after restoring%n", mismatches);
+
+        if (args.length < 2) {
+            Files.delete(file);
+        }
+    }
+}
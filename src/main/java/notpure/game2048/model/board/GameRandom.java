@@ -0,0 +1,115 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.model.board;
+
+/**
+ * The random number generator of {@link java.util.Random}, with its state exposed as a single long so it can
+ * be stored in primitive columns. Seeded identically, it produces exactly the same sequence as
+ * {@link java.util.Random}.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class GameRandom {
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    /**
+     * The 48-bit generator state.
+     */
+    private long state;
+
+    /**
+     * Constructs a new GameRandom.
+     *
+     * @param seed seed, as passed to {@link java.util.Random#Random(long)}
+     */
+    public GameRandom(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * Re-seeds this generator.
+     *
+     * @param seed seed, as passed to {@link java.util.Random#setSeed(long)}
+     */
+    public void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Gets the generator state, which unlike the seed can be used to resume the sequence.
+     *
+     * @return state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restores a state returned by {@link #getState()}.
+     *
+     * @param state state
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+
+    private int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * Returns a uniformly distributed value in [0, bound), as {@link java.util.Random#nextInt(int)}.
+     *
+     * @param bound upper bound, exclusive
+     * @return random value
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int r = next(31);
+        int m = bound - 1;
+
+        if ((bound & m) == 0) {
+            r = (int) ((bound * (long) r) >> 31);
+        } else {
+            for (int u = r; u - (r = u % bound) + m < 0; u = next(31)) {
+                // Rejecting values from the incomplete last interval
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Mixes a counter into a well distributed seed (SplitMix64), for deriving many game seeds from one.
+     *
+     * @param x value to mix
+     * @return seed
+     */
+    public static long mix(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.model.board;
+
+/**
+ * Many games stored as primitive columns: board, score, move count and random generator state, indexed by
+ * game id. A game is active while its board is not 0, as every game holds at least one tile.
+ * Stores are not thread-safe, each owning thread keeps its own.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class GameStore {
+
+    /**
+     * The bytes used by one game: board, score, move count, generator state and free list entry.
+     */
+    public static final int BYTES_PER_GAME = 8 + 4 + 4 + 8 + 4;
+
+    private final BoardRules rules;
+    /**
+     * The board column; it and the other columns are written and read directly by {@link GameCheckpoint}.
+     */
+    final long[] boards;
+    final int[] scores;
+    final int[] moveCounts;
+    final long[] randomStates;
+    /**
+     * A stack of the ids not in use.
+     */
+    private final int[] freeIds;
+    private int freeCount;
+
+    /**
+     * Constructs a new GameStore.
+     *
+     * @param rules    rules of the games
+     * @param capacity maximum amount of games
+     */
+    public GameStore(BoardRules rules, int capacity) {
+        this.rules = rules;
+        boards = new long[capacity];
+        scores = new int[capacity];
+        moveCounts = new int[capacity];
+        randomStates = new long[capacity];
+        freeIds = new int[capacity];
+        reclaimFreeIds();
+    }
+
+    /**
+     * Rebuilds the free ids from the boards, the ids of games not in progress being free.
+     */
+    void reclaimFreeIds() {
+        freeCount = 0;
+
+        // Handing out the lowest ids first
+        for (int id = boards.length - 1; id >= 0; id--) {
+            if (boards[id] == 0) {
+                freeIds[freeCount++] = id;
+            }
+        }
+    }
+
+    /**
+     * Starts a new game.
+     *
+     * @param seed   seed of the game's random generator
+     * @param random scratch generator
+     * @return game id, or -1 if the store is full
+     */
+    public int create(long seed, GameRandom random) {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int id = freeIds[--freeCount];
+        random.setSeed(seed);
+        boards[id] = rules.newGame(random);
+        scores[id] = 0;
+        moveCounts[id] = 0;
+        randomStates[id] = random.getState();
+        return id;
+    }
+
+    /**
+     * Ends a game and frees its id.
+     *
+     * @param id game id
+     */
+    public void release(int id) {
+        boards[id] = 0;
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Checks if the given id belongs to a game in progress.
+     *
+     * @param id game id
+     * @return whether or not the game is active
+     */
+    public boolean isActive(int id) {
+        return id >= 0 && id < boards.length && boards[id] != 0;
+    }
+
+    /**
+     * Performs a move, as {@code Game} does on a key press.
+     *
+     * @param id     game id
+     * @param dir    {@link notpure.game2048.model.tile.TileGrid.Direction} ordinal
+     * @param random scratch generator, its state is replaced by the game's
+     * @return whether or not the move was made, false if the game is over
+     */
+    public boolean move(int id, int dir, GameRandom random) {
+        long board = boards[id];
+
+        if (!rules.hasMoves(board)) {
+            return false;
+        }
+        random.setState(randomStates[id]);
+        scores[id] += rules.moveScore(board, dir);
+        boards[id] = rules.performMove(board, dir, random);
+        randomStates[id] = random.getState();
+        moveCounts[id]++;
+        return true;
+    }
+
+    public long getBoard(int id) {
+        return boards[id];
+    }
+
+    public int getScore(int id) {
+        return scores[id];
+    }
+
+    public int getMoveCount(int id) {
+        return moveCounts[id];
+    }
+
+    public long getRandomState(int id) {
+        return randomStates[id];
+    }
+
+    public int getCapacity() {
+        return boards.length;
+    }
+
+    public int getActiveCount() {
+        return boards.length - freeCount;
+    }
+
+    public BoardRules getRules() {
+        return rules;
+    }
+}
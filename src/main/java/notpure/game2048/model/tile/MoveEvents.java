@@ -0,0 +1,261 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.model.tile;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A ring buffer of the changes made to a {@link TileGrid}, so consumers can follow the board without rescanning
+ * it. Every event is packed into a long, so neither writing nor reading allocates.
+ * <p>
+ * A move is published at once, as a {@link #MOVE} event followed by its {@link #SLIDE}s, {@link #MERGE}s and the
+ * {@link #SPAWN} after it. Slides are ordered so that applying them one after another, then the merges and
+ * spawns, turns the board before the move into the board after it. A reset is a {@link #RESET} followed by the
+ * spawns of the new game.
+ * <p>
+ * There is one writer, the thread making the moves, and any amount of {@link Cursor}s, each read by one thread.
+ * The writer never waits: a cursor falling more than the capacity behind loses events, and is told so to rescan
+ * the grid once.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class MoveEvents {
+
+    /**
+     * The board was cleared.
+     */
+    public static final int RESET = 0;
+    /**
+     * A move was made: {@link #getDirection(long)} and the {@link #getValue(long) score} it gained.
+     */
+    public static final int MOVE = 1;
+    /**
+     * A tile with {@link #getValue(long) value} moved from {@link #getFromCell(long)} to {@link #getCell(long)}.
+     */
+    public static final int SLIDE = 2;
+    /**
+     * Tiles were combined in {@link #getCell(long)}, into a tile of {@link #getValue(long) value}, which is also
+     * the score gained.
+     */
+    public static final int MERGE = 3;
+    /**
+     * A tile with {@link #getValue(long) value} was inserted into {@link #getCell(long)}.
+     */
+    public static final int SPAWN = 4;
+    /**
+     * Returned by {@link Cursor#drain(long[])} when events were lost.
+     */
+    public static final int LOST = -1;
+
+    private final AtomicLongArray events;
+    private final int mask;
+    /**
+     * The sequence of the next event to write, written by the writer only.
+     */
+    private long head;
+    /**
+     * The sequence after the last event being written, raised before the event's slot is overwritten.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+    /**
+     * The sequence after the last event readers may read.
+     */
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * Constructs a new MoveEvents.
+     *
+     * @param capacity amount of events kept, a power of two
+     */
+    public MoveEvents(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        events = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Writes an event, visible to readers once published.
+     *
+     * @param event event
+     * @return the sequence of the event
+     */
+    long append(long event) {
+        long sequence = head++;
+        claimed.set(head);
+        events.lazySet((int) sequence & mask, event);
+        return sequence;
+    }
+
+    /**
+     * Replaces an event that is not published yet.
+     *
+     * @param sequence sequence of the event
+     * @param event    event
+     */
+    void replace(long sequence, long event) {
+        events.lazySet((int) sequence & mask, event);
+    }
+
+    /**
+     * Makes all written events visible to readers.
+     */
+    void publish() {
+        published.lazySet(head);
+    }
+
+    /**
+     * Creates a cursor reading the events published from now on.
+     *
+     * @return cursor
+     */
+    public Cursor subscribe() {
+        return new Cursor(published.get());
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    static long reset() {
+        return RESET;
+    }
+
+    static long move(int direction, int score) {
+        return MOVE | (long) direction << 4 | (long) score << 32;
+    }
+
+    static long slide(int fromCell, int toCell, int value) {
+        return SLIDE | (long) fromCell << 12 | (long) toCell << 4 | (long) value << 32;
+    }
+
+    static long merge(int cell, int value) {
+        return MERGE | (long) cell << 4 | (long) value << 32;
+    }
+
+    static long spawn(int cell, int value) {
+        return SPAWN | (long) cell << 4 | (long) value << 32;
+    }
+
+    /**
+     * Gets the type of an event.
+     *
+     * @param event event
+     * @return {@link #RESET}, {@link #MOVE}, {@link #SLIDE}, {@link #MERGE} or {@link #SPAWN}
+     */
+    public static int getType(long event) {
+        return (int) event & 0xF;
+    }
+
+    /**
+     * Gets the cell a slide, merge or spawn ended in.
+     *
+     * @param event event
+     * @return cell index, row * cols + col
+     */
+    public static int getCell(long event) {
+        return (int) (event >>> 4) & 0xFF;
+    }
+
+    /**
+     * Gets the cell a slide started in.
+     *
+     * @param event event
+     * @return cell index, row * cols + col
+     */
+    public static int getFromCell(long event) {
+        return (int) (event >>> 12) & 0xFF;
+    }
+
+    /**
+     * Gets the direction of a move.
+     *
+     * @param event event
+     * @return {@link TileGrid.Direction} ordinal
+     */
+    public static int getDirection(long event) {
+        return (int) (event >>> 4) & 0xFF;
+    }
+
+    /**
+     * Gets the tile value of a slide, merge or spawn, or the score gained by a move.
+     *
+     * @param event event
+     * @return value
+     */
+    public static int getValue(long event) {
+        return (int) (event >>> 32);
+    }
+
+    /**
+     * A reader of the events, used by one thread.
+     */
+    public final class Cursor {
+
+        /**
+         * The sequence of the next event to read.
+         */
+        private long next;
+
+        private Cursor(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Copies the next published events into the given batch.
+         *
+         * @param batch buffer to copy into
+         * @return the amount of events copied, or {@link #LOST} if this cursor fell behind, in which case it
+         * moves on to the events published next and the grid has to be read once to catch up
+         */
+        public int drain(long[] batch) {
+            long available = published.get();
+
+            if (available - next > events.length()) {
+                next = available;
+                return LOST;
+            }
+            int count = (int) Math.min(batch.length, available - next);
+
+            for (int i = 0; i < count; i++) {
+                batch[i] = events.get((int) (next + i) & mask);
+            }
+
+            // The writer may have overwritten the slots while they were being copied
+            if (claimed.get() - next > events.length()) {
+                next = published.get();
+                return LOST;
+            }
+            next += count;
+            return count;
+        }
+
+        /**
+         * Gets the amount of published events not read yet.
+         *
+         * @return pending events
+         */
+        public long getPending() {
+            return published.get() - next;
+        }
+    }
+}
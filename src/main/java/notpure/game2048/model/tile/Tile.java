@@ -21,53 +21,33 @@ package notpure.game2048.model.tile;
 import notpure.game2048.model.ColourScheme;
 import org.newdawn.slick.Color;
 import org.newdawn.slick.Graphics;
-import org.newdawn.slick.geom.RoundedRectangle;
-
-import java.awt.*;
 
 /**
- * A game tile.
+ * A game tile, holding only its value: its position is given by the cell of the {@link TileGrid} it is in
+ * and its colours by the shared {@link ColourScheme}.
  *
  * @author Pure <https://github.com/purecs>
  */
 public final class Tile {
 
-    private final Point position;
-    private final Dimension size;
-    private int valueRenderPosX;
-    private int valueRenderPosY;
-    private int value;
-    private boolean combinedThisTurn;
-    private Color[] colours;
-
     /**
-     * Constructs a new Tile and calculates related information, the value is set to -1.
-     *
-     * @param x
-     * @param y
-     * @param size
+     * The corner radius of a rendered tile.
      */
-    public Tile(int x, int y, Dimension size) {
-        this(-1, x, y, (int) size.getWidth(), (int) size.getHeight());
-    }
-
+    private static final int CORNER_RADIUS = 8;
     /**
-     * Constructs a new Tile and calculates related information.
-     *
-     * @param value  tile value
-     * @param x      position x
-     * @param y      position y
-     * @param width  tile width
-     * @param height tile height
+     * Cached value labels, indexed by the power of two of the value.
      */
-    public Tile(int value, int x, int y, int width, int height) {
-        this.value = value;
-        size = new Dimension(width, height);
-        position = new Point(x, y);
-        updateColour();
-        updateRenderPosition();
+    private static final String[] LABELS = new String[Integer.SIZE];
+
+    static {
+        for (int i = 0; i < LABELS.length; i++) {
+            LABELS[i] = Integer.toString(1 << i);
+        }
     }
 
+    private int value = -1;
+    private boolean combinedThisTurn;
+
     /**
      * Checks if two tiles can be combined.
      *
@@ -96,14 +76,12 @@ public final class Tile {
     }
 
     /**
-     * Sets this tiles value and re-calculates related information.
+     * Sets this tiles value.
      *
      * @param value value
      */
     public void setValue(int value) {
         this.value = value;
-        updateColour();
-        updateRenderPosition();
     }
 
     /**
@@ -138,41 +116,41 @@ public final class Tile {
      */
     public void reset() {
         value = -1;
-        updateColour();
-        updateRenderPosition();
+        combinedThisTurn = false;
     }
 
     /**
-     * Renders this tile and its value (if necessary).
+     * Renders a tile with the given value at the given position, without allocating.
      *
      * @param g
+     * @param colours colour scheme of the value
+     * @param value   tile value
+     * @param x       position x
+     * @param y       position y
+     * @param width   tile width
+     * @param height  tile height
      */
-    public void render(Graphics g) {
+    public static void render(Graphics g, Color[] colours, int value, float x, float y, float width, float height) {
         // Drawing the tile
         g.setColor(colours[ColourScheme.TILE_COLOUR_IDX]);
-        g.fill(new RoundedRectangle((int) position.getX() + 1, (int) position.getY() + 1,
-                (int) size.getWidth(), (int) size.getHeight(), 8));
+        g.fillRoundRect(x + 1, y + 1, width, height, CORNER_RADIUS);
 
         // Drawing the tile value, if the tile is valid
         if (value != -1) {
+            String label = label(value);
             g.setColor(colours[ColourScheme.TEXT_COLOUR_IDX]);
-            g.drawString(Integer.toString(value), valueRenderPosX, valueRenderPosY);
+            g.drawString(label, (int) x + (int) width / 2 - label.length() * 3, (int) y + (int) height / 2 - 8); // XXX find length based on g.getfont
         }
     }
 
     /**
-     * Sets this tiles colours.
-     */
-    private void updateColour() {
-        colours = ColourScheme.getColourScheme(value);
-    }
-
-    /**
-     * Calculates this tiles value render position.
+     * Gets the text to display for the given tile value.
+     *
+     * @param value tile value
+     * @return label
      */
-    private void updateRenderPosition() {
-        valueRenderPosX = (int) position.getX() + (int) size.getWidth() / 2 - Integer.toString(value).length() * 3; // XXX find length based on g.getfont
-        valueRenderPosY = (int) position.getY() + (int) size.getHeight() / 2 - 8;
+    public static String label(int value) {
+        return Integer.bitCount(value) == 1 ? LABELS[Integer.numberOfTrailingZeros(value)] : Integer.toString(value);
     }
 
     @Override
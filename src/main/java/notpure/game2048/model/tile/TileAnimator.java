@@ -0,0 +1,261 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.model.tile;
+
+import notpure.game2048.model.ColourScheme;
+import org.newdawn.slick.Color;
+import org.newdawn.slick.Graphics;
+
+/**
+ * Animates the {@link TileTransitions} of a move: tiles slide to their new cells, then combined and inserted
+ * tiles pop in. All state lives in arrays allocated once, so animating does not allocate per frame.
+ * The animator only reads the grid geometry, the cell values are handed to it, so it can be driven from
+ * published snapshots rather than the live grid.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class TileAnimator {
+
+    /**
+     * The duration of the slide phase, in milliseconds.
+     */
+    private static final float SLIDE_MILLIS = 100;
+    /**
+     * The duration of the pop phase, in milliseconds.
+     */
+    private static final float POP_MILLIS = 80;
+    /**
+     * How much a combined tile grows at the peak of the pop phase.
+     */
+    private static final float MERGE_POP_SCALE = 0.15f;
+
+    /**
+     * The TileGrid whose geometry is used.
+     */
+    private final TileGrid grid;
+    private final float[] fromX;
+    private final float[] fromY;
+    private final float[] toX;
+    private final float[] toY;
+    /**
+     * The interpolated position of each sliding tile.
+     */
+    private final float[] x;
+    private final float[] y;
+    /**
+     * The value of each sliding tile.
+     */
+    private final int[] values;
+    /**
+     * The colour scheme of each sliding tile.
+     */
+    private final Color[][] colours;
+    /**
+     * The value of each cell after the move.
+     */
+    private final int[] cellValues;
+    /**
+     * The colour scheme of each cell after the move.
+     */
+    private final Color[][] cellColours;
+    /**
+     * The pop kind of each cell: 0 for none, 1 for combined, 2 for inserted.
+     */
+    private final byte[] cellPops;
+    /**
+     * The interpolated scale of each cell.
+     */
+    private final float[] cellScales;
+    private Color[] emptyColours;
+    private int count;
+    private float elapsed;
+    private boolean animating;
+
+    /**
+     * Constructs a new TileAnimator.
+     *
+     * @param grid TileGrid to animate
+     */
+    public TileAnimator(TileGrid grid) {
+        this.grid = grid;
+        int capacity = grid.getCellCount();
+        fromX = new float[capacity];
+        fromY = new float[capacity];
+        toX = new float[capacity];
+        toY = new float[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        values = new int[capacity];
+        colours = new Color[capacity][];
+        cellValues = new int[capacity];
+        cellColours = new Color[capacity][];
+        cellPops = new byte[capacity];
+        cellScales = new float[capacity];
+    }
+
+    /**
+     * Starts animating a move.
+     *
+     * @param values      the value of each cell after the move
+     * @param transitions the transitions of the move
+     */
+    public void start(int[] values, TileTransitions transitions) {
+        load(values);
+        count = transitions.getCount();
+
+        for (int i = 0; i < count; i++) {
+            fromX[i] = grid.getCellX(transitions.getFromCell(i));
+            fromY[i] = grid.getCellY(transitions.getFromCell(i));
+            toX[i] = grid.getCellX(transitions.getToCell(i));
+            toY[i] = grid.getCellY(transitions.getToCell(i));
+            this.values[i] = transitions.getValue(i);
+            colours[i] = ColourScheme.getColourScheme(this.values[i]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (transitions.isMerged(i)) {
+                cellPops[transitions.getToCell(i)] = 1;
+            }
+        }
+
+        if (transitions.getSpawnCell() != -1) {
+            cellPops[transitions.getSpawnCell()] = 2;
+        }
+        elapsed = 0;
+        animating = true;
+        interpolate();
+    }
+
+    /**
+     * Shows the given cell values without animating.
+     *
+     * @param values the value of each cell
+     */
+    public void show(int[] values) {
+        load(values);
+        animating = false;
+    }
+
+    /**
+     * Copies the given cell values and resolves their colour schemes.
+     *
+     * @param values the value of each cell
+     */
+    private void load(int[] values) {
+        emptyColours = ColourScheme.getColourScheme(-1);
+
+        for (int cell = 0; cell < cellValues.length; cell++) {
+            cellValues[cell] = values[cell];
+            cellColours[cell] = ColourScheme.getColourScheme(values[cell]);
+            cellPops[cell] = 0;
+        }
+    }
+
+    /**
+     * Advances the animation.
+     *
+     * @param delta milliseconds passed since the last update
+     */
+    public void update(int delta) {
+        if (!animating) {
+            return;
+        }
+        elapsed += delta;
+
+        if (elapsed >= SLIDE_MILLIS + POP_MILLIS) {
+            animating = false;
+            return;
+        }
+        interpolate();
+    }
+
+    /**
+     * Checks whether or not an animation is in progress.
+     *
+     * @return animating
+     */
+    public boolean isAnimating() {
+        return animating;
+    }
+
+    /**
+     * Calculates the tile positions and scales for the elapsed time.
+     */
+    private void interpolate() {
+        if (elapsed < SLIDE_MILLIS) {
+            // Ease out, so tiles decelerate into their cells
+            float t = elapsed / SLIDE_MILLIS;
+            float eased = 1 - (1 - t) * (1 - t);
+
+            for (int i = 0; i < count; i++) {
+                x[i] = fromX[i] + (toX[i] - fromX[i]) * eased;
+                y[i] = fromY[i] + (toY[i] - fromY[i]) * eased;
+            }
+        } else {
+            float t = (elapsed - SLIDE_MILLIS) / POP_MILLIS;
+
+            for (int cell = 0; cell < cellScales.length; cell++) {
+                switch (cellPops[cell]) {
+                    case 1:
+                        cellScales[cell] = 1 + MERGE_POP_SCALE * (float) Math.sin(Math.PI * t);
+                        break;
+                    case 2:
+                        cellScales[cell] = t;
+                        break;
+                    default:
+                        cellScales[cell] = 1;
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders the current frame of the animation, or the cells as they are if no animation is in progress.
+     *
+     * @param g
+     */
+    public void render(Graphics g) {
+        float width = (float) grid.getTileDimensions().getWidth();
+        float height = (float) grid.getTileDimensions().getHeight();
+
+        // Empty cells underneath the moving tiles
+        for (int cell = 0; cell < cellValues.length; cell++) {
+            Tile.render(g, emptyColours, -1, grid.getCellX(cell), grid.getCellY(cell), width, height);
+        }
+
+        if (animating && elapsed < SLIDE_MILLIS) {
+            for (int i = 0; i < count; i++) {
+                Tile.render(g, colours[i], values[i], x[i], y[i], width, height);
+            }
+        } else {
+            for (int cell = 0; cell < cellValues.length; cell++) {
+                if (cellValues[cell] != -1) {
+                    float scale = animating ? cellScales[cell] : 1;
+                    float scaledWidth = width * scale;
+                    float scaledHeight = height * scale;
+                    Tile.render(g, cellColours[cell], cellValues[cell],
+                            grid.getCellX(cell) + (width - scaledWidth) / 2,
+                            grid.getCellY(cell) + (height - scaledHeight) / 2,
+                            scaledWidth, scaledHeight);
+                }
+            }
+        }
+    }
+}
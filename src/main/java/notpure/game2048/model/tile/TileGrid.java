@@ -19,10 +19,10 @@
 package notpure.game2048.model.tile;
 
 import notpure.game2048.Game;
+import notpure.game2048.model.ColourScheme;
 import org.newdawn.slick.Graphics;
 
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.Random;
 
 /**
@@ -36,6 +36,10 @@ public final class TileGrid {
      * Random number generator.
      */
     private static final Random RANDOM = new Random();
+    /**
+     * The amount of events kept for readers of {@link #getEvents()}, several hundred moves.
+     */
+    private static final int EVENT_CAPACITY = 8192;
 
     /**
      * The Game this TileSet is bound to.
@@ -58,9 +62,45 @@ public final class TileGrid {
     private final int cols;
 
     /**
-     * The dimensions of a single tile.
+     * Where the cells are drawn.
+     */
+    private final TileLayout layout;
+
+    /**
+     * The cell each tile present before the current move is now in, indexed by its starting cell.
+     */
+    private final int[] owners;
+
+    /**
+     * Whether or not each tile present before the current move was combined, indexed by its starting cell.
+     */
+    private final boolean[] ownersMerged;
+
+    /**
+     * The value of each tile before the current move, indexed by its starting cell.
+     */
+    private final int[] ownerValues;
+
+    /**
+     * Scratch buffer of free cell indices.
+     */
+    private final int[] freeCells;
+
+    /**
+     * Whether or not the slide of each tile present before the current move was emitted, indexed by its
+     * starting cell.
      */
-    private Dimension tileDimensions = new Dimension(128, 128);
+    private final boolean[] slideEmitted;
+
+    /**
+     * The transitions of the last move.
+     */
+    private final TileTransitions transitions;
+
+    /**
+     * The changes made to the grid.
+     */
+    private final MoveEvents events = new MoveEvents(EVENT_CAPACITY);
 
     /**
      * Creates a new TileSet.
@@ -69,7 +109,20 @@ public final class TileGrid {
         this.game = game;
         this.rows = rows;
         this.cols = cols;
+        layout = new TileLayout(rows, cols);
         tiles = new Tile[rows][cols];
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                tiles[row][col] = new Tile();
+            }
+        }
+        owners = new int[rows * cols];
+        ownersMerged = new boolean[rows * cols];
+        ownerValues = new int[rows * cols];
+        freeCells = new int[rows * cols];
+        slideEmitted = new boolean[rows * cols];
+        transitions = new TileTransitions(rows * cols);
     }
 
     /**
@@ -78,8 +131,95 @@ public final class TileGrid {
      * @param dir
      */
     private void moveInDirection(Direction dir) {
+        // The move event heads its slides and merges, its score is only known afterwards
+        long moveEvent = events.append(MoveEvents.move(dir.ordinal(), 0));
+        int score = game.getScore();
+        beginTransitions();
         shiftTiles(dir);
         combineTiles(dir);
+        endTransitions();
+        emitMoveEvents();
+        events.replace(moveEvent, MoveEvents.move(dir.ordinal(), game.getScore() - score));
+    }
+
+    /**
+     * Records the starting cell of every tile before a move.
+     */
+    private void beginTransitions() {
+        transitions.clear();
+
+        for (int cell = 0; cell < owners.length; cell++) {
+            Tile tile = tile(cell);
+            owners[cell] = tile.isValid() ? cell : -1;
+            ownersMerged[cell] = false;
+            ownerValues[cell] = tile.getValue();
+        }
+    }
+
+    /**
+     * Tracks the tiles moved from one cell to another.
+     *
+     * @param from  cell moved from
+     * @param to    cell moved to
+     * @param merge whether or not the tiles were combined with the tile in the destination cell
+     */
+    private void relocate(int from, int to, boolean merge) {
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] == from) {
+                owners[i] = to;
+                ownersMerged[i] |= merge;
+            } else if (merge && owners[i] == to) {
+                ownersMerged[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Stores the tracked tile movements into the transitions.
+     */
+    private void endTransitions() {
+        for (int cell = 0; cell < owners.length; cell++) {
+            if (owners[cell] != -1) {
+                transitions.add(cell, owners[cell], ownerValues[cell], ownersMerged[cell]);
+            }
+        }
+    }
+
+    /**
+     * Writes the slides and merges of the tracked tile movements into the events.
+     * A slide is only written once no unwritten slide starts in its destination, so applying them in order
+     * never overwrites a tile that has yet to move.
+     */
+    private void emitMoveEvents() {
+        int remaining = 0;
+
+        for (int cell = 0; cell < owners.length; cell++) {
+            slideEmitted[cell] = owners[cell] == -1 || owners[cell] == cell;
+
+            if (!slideEmitted[cell]) {
+                remaining++;
+            }
+        }
+
+        while (remaining > 0) {
+            for (int cell = 0; cell < owners.length; cell++) {
+                if (!slideEmitted[cell] && (owners[owners[cell]] == -1 || slideEmitted[owners[cell]])) {
+                    events.append(MoveEvents.slide(cell, owners[cell], ownerValues[cell]));
+                    slideEmitted[cell] = true;
+                    remaining--;
+                }
+            }
+        }
+
+        // Merges, once per destination cell
+        for (int cell = 0; cell < owners.length; cell++) {
+            for (int start = 0; start < owners.length; start++) {
+                if (owners[start] == cell && ownersMerged[start]) {
+                    events.append(MoveEvents.merge(cell, getValue(cell)));
+                    break;
+                }
+            }
+        }
     }
 
     /**
@@ -90,6 +230,17 @@ public final class TileGrid {
     public void performMove(Direction dir) {
         game.getTiles().moveInDirection(dir);
         insertSafeRandomTile();
+        events.publish();
+    }
+
+    /**
+     * Shifts the tile set in the given direction without inserting a random tile, for tools driving the grid.
+     *
+     * @param dir direction
+     */
+    public void move(Direction dir) {
+        moveInDirection(dir);
+        events.publish();
     }
 
     /**
@@ -104,6 +255,7 @@ public final class TileGrid {
 
             tiles[y + dy][x + dx].setCombinedThisTurn(true);
             tiles[y][x].setCombinedThisTurn(true);
+            relocate(y * cols + x, (y + dy) * cols + x + dx, true);
 
             game.addScore(tiles[y + dy][x + dx].getValue());
             return true;
@@ -209,6 +361,7 @@ public final class TileGrid {
         if (!tiles[y + dy][x + dx].isValid() && tiles[y][x].isValid()) {
             tiles[y + dy][x + dx].setValue(tiles[y][x].getValue());
             tiles[y][x].setValue(-1);
+            relocate(y * cols + x, (y + dy) * cols + x + dx, false);
             return true;
         }
         return swapped;
@@ -251,27 +404,27 @@ public final class TileGrid {
      * @param g
      */
     public void render(Graphics g) {
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                tiles[row][col].render(g);
-            }
+        float width = (float) layout.getTileDimensions().getWidth();
+        float height = (float) layout.getTileDimensions().getHeight();
+
+        for (int cell = 0; cell < rows * cols; cell++) {
+            int value = getValue(cell);
+            Tile.render(g, ColourScheme.getColourScheme(value), value, getCellX(cell), getCellY(cell), width, height);
         }
     }
 
     /**
-     * Resets the TileSet to contain only empty tiles.
+     * Resets the TileSet to contain only empty tiles, in place.
      */
     public void reset() {
-        int rowOffset = 0;
-        int colOffset = 0;
+        transitions.clear();
+        events.append(MoveEvents.reset());
+        events.publish();
 
         for (int row = 0; row < rows; row++) {
             for (int col = 0; col < cols; col++) {
-                tiles[row][col] = new Tile(rowOffset, colOffset, tileDimensions);
-                colOffset += tileDimensions.getWidth();
+                tiles[row][col].reset();
             }
-            colOffset = 0;
-            rowOffset += tileDimensions.getHeight();
         }
     }
 
@@ -309,7 +462,7 @@ public final class TileGrid {
      * @return
      */
     public Dimension getTileDimensions() {
-        return tileDimensions;
+        return layout.getTileDimensions();
     }
 
     /**
@@ -327,34 +480,35 @@ public final class TileGrid {
      * @return free slots
      */
     public int freeSlots() {
-        return getFreeTiles().length;
-    }
-
-    /**
-     * Gets the free tiles.
-     *
-     * @return free tiles
-     */
-    public Tile[] getFreeTiles() {
-        ArrayList<Tile> freeTiles = new ArrayList<>();
+        int free = 0;
 
         for (int row = 0; row < rows; row++) {
             for (int col = 0; col < cols; col++) {
-                if (tiles[row][col].getValue() == -1) {
-                    freeTiles.add(tiles[row][col]);
+                if (!tiles[row][col].isValid()) {
+                    free++;
                 }
             }
         }
-        return freeTiles.toArray(new Tile[freeTiles.size()]);
+        return free;
     }
 
     /**
      * Inserts a random tile.
      */
     public void insertRandomTile() {
-        Tile[] tiles = getFreeTiles();
-        int randomIdx = RANDOM.nextInt(tiles.length);
-        tiles[randomIdx].setValue(randomTileValue());
+        int free = 0;
+
+        for (int cell = 0; cell < freeCells.length; cell++) {
+            if (!tile(cell).isValid()) {
+                freeCells[free++] = cell;
+            }
+        }
+        int cell = freeCells[RANDOM.nextInt(free)];
+        int value = randomTileValue();
+        tile(cell).setValue(value);
+        transitions.setSpawn(cell, value);
+        events.append(MoveEvents.spawn(cell, value));
+        events.publish();
     }
 
     /**
@@ -379,13 +533,107 @@ public final class TileGrid {
         return RANDOM.nextInt(100) > 30 ? 2 : 4;
     }
 
+    /**
+     * Gets the tile in the given cell.
+     *
+     * @param cell cell index, row * cols + col
+     * @return tile
+     */
+    private Tile tile(int cell) {
+        return tiles[cell / cols][cell % cols];
+    }
+
+    /**
+     * Gets the value of the tile in the given cell.
+     *
+     * @param cell cell index, row * cols + col
+     * @return tile value
+     */
+    public int getValue(int cell) {
+        return tile(cell).getValue();
+    }
+
+    /**
+     * Sets the value of the tile in the given cell, for tools driving the grid.
+     *
+     * @param cell  cell index, row * cols + col
+     * @param value tile value, -1 for no tile
+     */
+    public void setValue(int cell, int value) {
+        tile(cell).setValue(value);
+    }
+
+    /**
+     * Gets the render position x of the given cell.
+     *
+     * @param cell cell index, row * cols + col
+     * @return position x
+     */
+    public int getCellX(int cell) {
+        return layout.getCellX(cell);
+    }
+
+    /**
+     * Gets the render position y of the given cell.
+     *
+     * @param cell cell index, row * cols + col
+     * @return position y
+     */
+    public int getCellY(int cell) {
+        return layout.getCellY(cell);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Gets the amount of cells in the grid.
+     *
+     * @return cell count
+     */
+    public int getCellCount() {
+        return rows * cols;
+    }
+
+    /**
+     * Gets the transitions of the last move, including the random tile inserted after it.
+     *
+     * @return transitions
+     */
+    public TileTransitions getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * Gets the events of the changes made to the grid, from resets, moves and inserted tiles.
+     *
+     * @return events
+     */
+    public MoveEvents getEvents() {
+        return events;
+    }
+
     /**
      * Gets the dimension of the game view port.
      *
      * @return
      */
     public Dimension getGameDimensions() {
-        return new Dimension((int) (rows * tileDimensions.getWidth()), (int) (cols * tileDimensions.getHeight()));
+        return layout.getGameDimensions();
+    }
+
+    /**
+     * Gets where the cells are drawn.
+     *
+     * @return layout
+     */
+    public TileLayout getLayout() {
+        return layout;
     }
 
 
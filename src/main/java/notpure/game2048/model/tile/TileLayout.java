@@ -0,0 +1,110 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.model.tile;
+
+import java.awt.*;
+
+/**
+ * The on-screen geometry of a grid: where each cell is drawn and how large the game is.
+ * Unlike {@link TileGrid} it depends on no game or Slick2D type, so headless renderers can share it.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class TileLayout {
+
+    /**
+     * The tile array rows.
+     */
+    private final int rows;
+    /**
+     * The tile array columns.
+     */
+    private final int cols;
+    /**
+     * The dimensions of a single tile.
+     */
+    private final Dimension tileDimensions = new Dimension(128, 128);
+
+    /**
+     * Constructs a new TileLayout.
+     *
+     * @param rows grid rows
+     * @param cols grid columns
+     */
+    public TileLayout(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    /**
+     * Gets the {@link Dimension} of a single {@link Tile}.
+     *
+     * @return tile dimensions
+     */
+    public Dimension getTileDimensions() {
+        return tileDimensions;
+    }
+
+    /**
+     * Gets the render position x of the given cell.
+     *
+     * @param cell cell index, row * cols + col
+     * @return position x
+     */
+    public int getCellX(int cell) {
+        return (cell / cols) * (int) tileDimensions.getHeight();
+    }
+
+    /**
+     * Gets the render position y of the given cell.
+     *
+     * @param cell cell index, row * cols + col
+     * @return position y
+     */
+    public int getCellY(int cell) {
+        return (cell % cols) * (int) tileDimensions.getWidth();
+    }
+
+    /**
+     * Gets the dimension of the game view port.
+     *
+     * @return game dimensions
+     */
+    public Dimension getGameDimensions() {
+        return new Dimension((int) (rows * tileDimensions.getWidth()), (int) (cols * tileDimensions.getHeight()));
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Gets the amount of cells in the grid.
+     *
+     * @return cell count
+     */
+    public int getCellCount() {
+        return rows * cols;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.model.tile;
+
+/**
+ * The tile transitions produced by the last move, stored in preallocated arrays.
+ * Every tile present before the move has exactly one transition, stationary tiles included.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class TileTransitions {
+
+    /**
+     * The cell each tile started in.
+     */
+    private final int[] fromCells;
+    /**
+     * The cell each tile ended up in.
+     */
+    private final int[] toCells;
+    /**
+     * The value of each tile before the move.
+     */
+    private final int[] values;
+    /**
+     * Whether or not each tile was combined into another.
+     */
+    private final boolean[] merged;
+    /**
+     * The amount of transitions stored.
+     */
+    private int count;
+    /**
+     * The cell a random tile was inserted into, or -1.
+     */
+    private int spawnCell = -1;
+    /**
+     * The value of the inserted random tile.
+     */
+    private int spawnValue;
+
+    /**
+     * Constructs a new TileTransitions.
+     *
+     * @param capacity maximum amount of transitions, the amount of cells in the grid
+     */
+    public TileTransitions(int capacity) {
+        fromCells = new int[capacity];
+        toCells = new int[capacity];
+        values = new int[capacity];
+        merged = new boolean[capacity];
+    }
+
+    /**
+     * Removes all transitions and the spawn.
+     */
+    public void clear() {
+        count = 0;
+        spawnCell = -1;
+        spawnValue = 0;
+    }
+
+    /**
+     * Adds a transition.
+     *
+     * @param fromCell cell the tile started in
+     * @param toCell   cell the tile ended up in
+     * @param value    value of the tile before the move
+     * @param merged   whether or not the tile was combined
+     */
+    void add(int fromCell, int toCell, int value, boolean merged) {
+        fromCells[count] = fromCell;
+        toCells[count] = toCell;
+        values[count] = value;
+        this.merged[count] = merged;
+        count++;
+    }
+
+    /**
+     * Sets the random tile inserted after the move.
+     *
+     * @param cell  cell index
+     * @param value tile value
+     */
+    void setSpawn(int cell, int value) {
+        spawnCell = cell;
+        spawnValue = value;
+    }
+
+    /**
+     * Copies the given transitions into this instance.
+     *
+     * @param other transitions to copy
+     */
+    public void copyFrom(TileTransitions other) {
+        System.arraycopy(other.fromCells, 0, fromCells, 0, other.count);
+        System.arraycopy(other.toCells, 0, toCells, 0, other.count);
+        System.arraycopy(other.values, 0, values, 0, other.count);
+        System.arraycopy(other.merged, 0, merged, 0, other.count);
+        count = other.count;
+        spawnCell = other.spawnCell;
+        spawnValue = other.spawnValue;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getFromCell(int idx) {
+        return fromCells[idx];
+    }
+
+    public int getToCell(int idx) {
+        return toCells[idx];
+    }
+
+    public int getValue(int idx) {
+        return values[idx];
+    }
+
+    public boolean isMerged(int idx) {
+        return merged[idx];
+    }
+
+    public int getSpawnCell() {
+        return spawnCell;
+    }
+
+    public int getSpawnValue() {
+        return spawnValue;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.render;
+
+import notpure.game2048.BoardSnapshot;
+import notpure.game2048.Game;
+import notpure.game2048.ai.Player;
+import notpure.game2048.ai.RandomPlayer;
+import notpure.game2048.model.ColourScheme;
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+import notpure.game2048.model.tile.TileLayout;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Plays a game with random moves headlessly and exports one frame per move. The game is played by
+ * {@link BoardRules}, so neither Slick2D nor LWJGL is loaded.
+ * <p>
+ * Usage: {@code ExportGame png <directory> <moves>} or {@code ExportGame encoder <moves> <command...>},
+ * where the encoder command receives raw RGBA frames on its standard input.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class ExportGame {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || !(args[0].equals("png") || args[0].equals("encoder"))) {
+            System.err.println("Usage: ExportGame png <directory> <moves>");
+            System.err.println("       ExportGame encoder <moves> <command...>");
+            System.exit(1);
+        }
+        ColourScheme.loadDefault();
+        TileLayout layout = new TileLayout(Game.ROWS, Game.COLS);
+        OffscreenRenderer renderer = new OffscreenRenderer(layout);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int cells = layout.getCellCount();
+        int moves;
+        FrameExporter exporter;
+
+        if (args[0].equals("png")) {
+            moves = Integer.parseInt(args[2]);
+            exporter = FrameExporter.toPngSequence(renderer, cells, new File(args[1]), threads);
+        } else {
+            moves = Integer.parseInt(args[1]);
+            exporter = FrameExporter.toEncoder(renderer, cells, Arrays.asList(args).subList(2, args.length), threads);
+        }
+        System.out.println("Frame size: " + renderer.getWidth() + "x" + renderer.getHeight());
+
+        // Playing the game, one frame per state
+        BoardRules rules = new BoardRules(Game.ROWS, Game.COLS);
+        long seed = System.nanoTime();
+        GameRandom random = new GameRandom(seed);
+        Player player = new RandomPlayer(rules, GameRandom.mix(seed));
+        long board = rules.newGame(random);
+        int score = 0;
+        BoardSnapshot snapshot = new BoardSnapshot(cells);
+        long start = System.nanoTime();
+        int frames = 0;
+
+        try {
+            for (int move = 0; ; move++) {
+                snapshot.capture(rules, board, score, score, move);
+                exporter.submit(snapshot);
+                frames++;
+                int dir = player.chooseMove(board);
+
+                if (move == moves || dir == Player.NO_MOVE) {
+                    break;
+                }
+                score += rules.moveScore(board, dir);
+                board = rules.performMove(board, dir, random);
+            }
+        } finally {
+            exporter.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d frames in %.2fs (%.1f frames/s)%n", frames, seconds, frames / seconds);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.render;
+
+import notpure.game2048.BoardSnapshot;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders and encodes frames in parallel, either into a numbered PNG sequence or as raw RGBA frames piped
+ * into a local encoder process (such as {@code ffmpeg -f rawvideo -pix_fmt rgba -s WxH -i - out.mp4}).
+ * Frames are recycled from a fixed pool, so submitting blocks once every frame is in flight, and piped
+ * frames are written in submission order.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class FrameExporter implements Closeable {
+
+    /**
+     * The amount of frames in flight per worker thread.
+     */
+    private static final int FRAMES_PER_THREAD = 2;
+
+    private final OffscreenRenderer renderer;
+    private final ExecutorService workers;
+    /**
+     * The frames not in flight.
+     */
+    private final ArrayBlockingQueue<Frame> freeFrames;
+    /**
+     * The frames in flight, in submission order.
+     */
+    private final ArrayDeque<Future<Frame>> pendingFrames = new ArrayDeque<>();
+    /**
+     * The directory PNG files are written to, or null when piping to an encoder.
+     */
+    private final File directory;
+    /**
+     * The encoder process, or null when writing PNG files.
+     */
+    private final Process encoder;
+    private final OutputStream encoderInput;
+    private int nextIndex;
+
+    private FrameExporter(OffscreenRenderer renderer, int threads, int cells, File directory, Process encoder) {
+        this.renderer = renderer;
+        this.directory = directory;
+        this.encoder = encoder;
+        encoderInput = encoder == null ? null : new BufferedOutputStream(encoder.getOutputStream(), 1 << 20);
+        workers = Executors.newFixedThreadPool(threads);
+        freeFrames = new ArrayBlockingQueue<>(threads * FRAMES_PER_THREAD);
+
+        for (int i = 0; i < threads * FRAMES_PER_THREAD; i++) {
+            freeFrames.add(new Frame(renderer, cells, encoder != null));
+        }
+    }
+
+    /**
+     * Creates an exporter writing frames to {@code frame-000000.png}, {@code frame-000001.png}, etc.
+     *
+     * @param renderer  renderer to use
+     * @param cells     amount of cells in the grid
+     * @param directory directory to write to, created if necessary
+     * @param threads   amount of encoding threads
+     * @return exporter
+     * @throws IOException if the directory cannot be created
+     */
+    public static FrameExporter toPngSequence(OffscreenRenderer renderer, int cells, File directory, int threads)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + directory);
+        }
+        return new FrameExporter(renderer, threads, cells, directory, null);
+    }
+
+    /**
+     * Creates an exporter writing raw RGBA frames to the standard input of the given encoder command.
+     *
+     * @param renderer renderer to use
+     * @param cells    amount of cells in the grid
+     * @param command  encoder command line
+     * @param threads  amount of rendering threads
+     * @return exporter
+     * @throws IOException if the encoder cannot be started
+     */
+    public static FrameExporter toEncoder(OffscreenRenderer renderer, int cells, List<String> command, int threads)
+            throws IOException {
+        Process encoder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        return new FrameExporter(renderer, threads, cells, null, encoder);
+    }
+
+    /**
+     * Queues the given game state as the next frame, the snapshot is copied and may be reused by the caller.
+     *
+     * @param snapshot game state
+     * @throws IOException          if a previous frame failed to encode or write
+     * @throws InterruptedException if interrupted while waiting for a free frame
+     */
+    public void submit(BoardSnapshot snapshot) throws IOException, InterruptedException {
+        Frame frame = freeFrames.poll();
+
+        while (frame == null) {
+            completeOldest();
+            frame = freeFrames.poll();
+        }
+        frame.snapshot.copyFrom(snapshot);
+        frame.index = nextIndex++;
+
+        final Frame task = frame;
+        pendingFrames.add(workers.submit(() -> encode(task)));
+
+        // Writing out the frames which are already done, in order
+        while (!pendingFrames.isEmpty() && pendingFrames.peek().isDone()) {
+            completeOldest();
+        }
+    }
+
+    /**
+     * Renders and encodes a frame, on a worker thread.
+     *
+     * @param frame frame to encode
+     * @return the frame
+     * @throws IOException if the PNG file cannot be written
+     */
+    private Frame encode(Frame frame) throws IOException {
+        renderer.render(frame.snapshot, frame.image);
+
+        if (directory != null) {
+            File file = new File(directory, String.format("frame-%06d.png", frame.index));
+
+            if (!ImageIO.write(frame.image, "png", file)) {
+                throw new IOException("No PNG writer available");
+            }
+        } else {
+            OffscreenRenderer.toRgba(frame.image, frame.rgba);
+        }
+        return frame;
+    }
+
+    /**
+     * Waits for the oldest frame in flight, writes it to the encoder if necessary and frees it.
+     *
+     * @throws IOException          if the frame failed to encode or write
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void completeOldest() throws IOException, InterruptedException {
+        Frame frame;
+
+        try {
+            frame = pendingFrames.remove().get();
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to encode frame", e.getCause());
+        }
+
+        if (encoderInput != null) {
+            encoderInput.write(frame.rgba);
+        }
+        freeFrames.add(frame);
+    }
+
+    /**
+     * Waits for all frames to be written, then stops the workers and the encoder. If the export failed, the
+     * encoder is killed rather than left waiting for the rest of its input.
+     *
+     * @throws IOException if a frame failed or the encoder exited abnormally
+     */
+    @Override
+    public void close() throws IOException {
+        boolean encoderExited = encoder == null;
+
+        try {
+            while (!pendingFrames.isEmpty()) {
+                completeOldest();
+            }
+
+            if (encoder != null) {
+                encoderInput.close();
+                int exitCode = encoder.waitFor();
+                encoderExited = true;
+
+                if (exitCode != 0) {
+                    throw new IOException("Encoder exited with code " + exitCode);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing export", e);
+        } finally {
+            workers.shutdownNow();
+
+            if (!encoderExited) {
+                encoder.destroy();
+
+                try {
+                    encoderInput.close();
+                } catch (IOException ignored) {
+                    // The encoder is gone, so its input pipe is broken
+                }
+            }
+        }
+    }
+
+    /**
+     * A reusable frame: its game state, the image it is rendered into and its RGBA copy.
+     */
+    private static final class Frame {
+
+        private final BoardSnapshot snapshot;
+        private final BufferedImage image;
+        private final byte[] rgba;
+        private int index;
+
+        private Frame(OffscreenRenderer renderer, int cells, boolean raw) {
+            snapshot = new BoardSnapshot(cells);
+            image = renderer.createImage();
+            rgba = raw ? new byte[renderer.getWidth() * renderer.getHeight() * 4] : null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.render;
+
+import notpure.game2048.BoardSnapshot;
+import notpure.game2048.model.ColourScheme;
+import notpure.game2048.model.tile.Tile;
+import notpure.game2048.model.tile.TileLayout;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Renders game states into images with Java2D, without a display, Slick2D or LWJGL.
+ * The layout matches
+ * {@link Tile#render(org.newdawn.slick.Graphics, org.newdawn.slick.Color[], int, float, float, float, float)}
+ * and {@code GameRenderer}.
+ * A renderer holds no per-frame state, so one instance can be shared by rendering threads.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class OffscreenRenderer {
+
+    /**
+     * The corner arc of a rendered tile, twice the corner radius used on screen.
+     */
+    private static final int CORNER_ARC = 16;
+    private static final Font FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 14);
+    private static final Color GAME_OVER_BACKGROUND = new Color(0, 0, 0, 128);
+
+    /**
+     * Where the cells are drawn.
+     */
+    private final TileLayout layout;
+    private final int width;
+    private final int height;
+
+    /**
+     * Constructs a new OffscreenRenderer.
+     *
+     * @param layout where to draw the cells
+     */
+    public OffscreenRenderer(TileLayout layout) {
+        this.layout = layout;
+        width = (int) layout.getGameDimensions().getWidth();
+        height = (int) layout.getGameDimensions().getHeight();
+    }
+
+    /**
+     * Creates an image sized to fit a frame.
+     *
+     * @return image
+     */
+    public BufferedImage createImage() {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Renders the given game state into the given image.
+     *
+     * @param snapshot game state
+     * @param image    image created by {@link #createImage()}
+     */
+    public void render(BoardSnapshot snapshot, BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(FONT);
+            int ascent = g.getFontMetrics().getAscent();
+
+            // Game background
+            g.setColor(new Color(ColourScheme.getBackgroundRgb()));
+            g.fillRect(0, 0, width, height);
+
+            // Tiles
+            int tileWidth = (int) layout.getTileDimensions().getWidth();
+            int tileHeight = (int) layout.getTileDimensions().getHeight();
+            int[] values = snapshot.getValues();
+
+            for (int cell = 0; cell < values.length; cell++) {
+                int x = layout.getCellX(cell);
+                int y = layout.getCellY(cell);
+                int[] colours = ColourScheme.getRgbColourScheme(values[cell]);
+
+                g.setColor(new Color(colours[ColourScheme.TILE_COLOUR_IDX]));
+                g.fillRoundRect(x + 1, y + 1, tileWidth, tileHeight, CORNER_ARC, CORNER_ARC);
+
+                if (values[cell] != -1) {
+                    String label = Tile.label(values[cell]);
+                    g.setColor(new Color(colours[ColourScheme.TEXT_COLOUR_IDX]));
+                    g.drawString(label, x + tileWidth / 2 - label.length() * 3, y + tileHeight / 2 - 8 + ascent);
+                }
+            }
+
+            // Score
+            g.setColor(new Color(ColourScheme.getScoreTextRgb()));
+            g.drawString("Score: " + snapshot.getScore(), 8, 5 + ascent);
+            g.drawString("Best Score: " + snapshot.getBestScore(), 8, 25 + ascent);
+
+            // Game over text
+            if (snapshot.isGameOver()) {
+                String scoreText = "Game over, your score is: " + snapshot.getScore() + "!";
+                g.setColor(GAME_OVER_BACKGROUND);
+                g.fillRect(128, 100, g.getFontMetrics().stringWidth(scoreText) + 10, 40);
+                g.setColor(Color.WHITE);
+                g.drawString(scoreText, 130, 100 + ascent);
+                g.drawString("Press r to play again!", 130, 120 + ascent);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Copies an image created by {@link #createImage()} into a raw RGBA buffer.
+     *
+     * @param image image to copy
+     * @param rgba  destination, 4 bytes per pixel
+     */
+    public static void toRgba(BufferedImage image, byte[] rgba) {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 4) {
+            int argb = pixels[i];
+            rgba[j] = (byte) (argb >> 16);
+            rgba[j + 1] = (byte) (argb >> 8);
+            rgba[j + 2] = (byte) argb;
+            rgba[j + 3] = (byte) (argb >>> 24);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.server;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client connection of an {@link EventLoop}, with its input and output buffers. Both buffers are kept in
+ * write mode: their position is the amount of bytes buffered.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+final class Connection {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    final SocketChannel channel;
+    final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /**
+     * The key of the channel with the selector of the event loop currently serving this connection.
+     */
+    SelectionKey key;
+    /**
+     * Whether or not this connection is queued to be flushed at the end of the loop iteration.
+     */
+    boolean flushQueued;
+    /**
+     * The group this connection is being handed over to.
+     */
+    int handoverGroup;
+    /**
+     * The groups this connection created sessions in, indexed by group, or null if it created none.
+     */
+    boolean[] createdIn;
+    /**
+     * Whether or not this connection was closed, so the sessions it created are to be released.
+     */
+    volatile boolean closed;
+    /**
+     * The session broadcast this connection is spectating, or null if it is not a spectator stream.
+     */
+    SpectatorHub.Broadcast broadcast;
+    /**
+     * The position in the broadcast of the next byte to send.
+     */
+    long cursor;
+    /**
+     * The position in the broadcast of the first frame boundary at or after the cursor.
+     */
+    long frameEnd;
+    /**
+     * A view of the broadcast ring, sharing its memory, used to write from it.
+     */
+    ByteBuffer ringView;
+
+    Connection(SocketChannel channel) {
+        this.channel = channel;
+    }
+}
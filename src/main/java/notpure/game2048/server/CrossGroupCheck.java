@@ -0,0 +1,180 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.server;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Checks a {@link RaceServer} serving one client whose requests alternate between sessions of two connection
+ * groups, moving its connection between their loops on every request, alone and pipelined. Every reply must
+ * address the requested session and both loops must keep serving. Once the clients disconnect without closing
+ * their sessions, the sessions they created in either group must be released.
+ * <p>
+ * Usage: {@code CrossGroupCheck [rounds] [pipeline depth]}, exiting with 1 on failure.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class CrossGroupCheck {
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int pipeline = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        RaceServer server = new RaceServer(0, 2, 1024);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "race-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        int failures = 0;
+        long start = System.nanoTime();
+
+        // Connections are accepted in turn by the groups, each creating a session in its own
+        try (Socket first = open(server); Socket second = open(server)) {
+            int[] sessions = {create(first), create(second)};
+
+            if (sessions[0] / 1024 == sessions[1] / 1024) {
+                throw new IllegalStateException("Sessions in the same group: " + sessions[0] + ", " + sessions[1]);
+            }
+
+            for (int round = 0; round < rounds; round++) {
+                // Alternating one request at a time, then a pipelined batch
+                failures += exchange(first, sessions, 1, round);
+                failures += exchange(first, sessions, pipeline, round);
+            }
+
+            // Both groups still answer
+            failures += exchange(second, sessions, 2, 0);
+            failures += exchange(open(server), sessions, 2, 0);
+
+            // More sessions of the first client, created on each group's loop in turn
+            failures += exchange(first, sessions, 1, 0);
+            create(first);
+            failures += exchange(first, sessions, 1, 1);
+            create(first);
+        } catch (IOException e) {
+            System.out.println("Connection failed: " + e);
+            failures++;
+        }
+        failures += awaitReleased(server);
+        server.stop();
+        System.out.printf("%d rounds of requests alternating between 2 groups in %.2fs: %d failures%n", rounds,
+                (System.nanoTime() - start) / 1e9, failures);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static Socket open(RaceServer server) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        return socket;
+    }
+
+    private static int create(Socket socket) throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(Protocol.REQUEST_SIZE);
+        Protocol.putRequest(request, Protocol.OP_CREATE, 0, 0);
+        socket.getOutputStream().write(request.array());
+        ByteBuffer reply = readReply(new DataInputStream(socket.getInputStream()));
+
+        if (reply.get(1) != Protocol.STATUS_OK) {
+            throw new IOException("Unable to create a session, status " + reply.get(1));
+        }
+        return reply.getInt(4);
+    }
+
+    /**
+     * Sends a batch of state requests and moves alternating between the sessions, and checks the replies.
+     *
+     * @return the amount of wrong replies
+     */
+    private static int exchange(Socket socket, int[] sessions, int count, int round) throws IOException {
+        ByteBuffer requests = ByteBuffer.allocate(count * Protocol.REQUEST_SIZE);
+
+        for (int i = 0; i < count; i++) {
+            int session = sessions[(round + i) & 1];
+
+            if ((i & 2) == 0) {
+                Protocol.putRequest(requests, Protocol.OP_STATE, 0, session);
+            } else {
+                Protocol.putRequest(requests, Protocol.OP_MOVE, (round + i) & 3, session);
+            }
+        }
+        OutputStream out = socket.getOutputStream();
+        out.write(requests.array());
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        int failures = 0;
+
+        for (int i = 0; i < count; i++) {
+            ByteBuffer reply = readReply(in);
+            int status = reply.get(1);
+
+            if (reply.getInt(4) != sessions[(round + i) & 1]
+                    || status != Protocol.STATUS_OK && status != Protocol.STATUS_GAME_OVER) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Waits for the sessions of the disconnected clients to be released.
+     *
+     * @return 1 if sessions are still active after the timeout, 0 otherwise
+     */
+    private static int awaitReleased(RaceServer server) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_MILLIS * 1_000_000L;
+        int active;
+
+        try (Socket socket = open(server)) {
+            ByteBuffer request = ByteBuffer.allocate(Protocol.REQUEST_SIZE);
+            Protocol.putRequest(request, Protocol.OP_STATS, 0, 0);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            do {
+                socket.getOutputStream().write(request.array());
+                active = readReply(in).getInt(4);
+
+                if (active == 0) {
+                    return 0;
+                }
+                Thread.sleep(10);
+            } while (System.nanoTime() < deadline);
+        }
+        System.out.println(active + " sessions of disconnected clients still active");
+        return 1;
+    }
+
+    private static ByteBuffer readReply(DataInputStream in) throws IOException {
+        byte[] reply = new byte[Protocol.REPLY_SIZE];
+        in.readFully(reply);
+        return ByteBuffer.wrap(reply);
+    }
+}
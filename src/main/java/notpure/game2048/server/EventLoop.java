@@ -0,0 +1,516 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.server;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameRandom;
+import notpure.game2048.model.board.GameStore;
+import notpure.game2048.telemetry.Telemetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Serves one connection group on a single thread: its connections and the sessions they create, which are
+ * kept in the loop's own {@link GameStore}, so no session state is shared between threads.
+ * <p>
+ * All requests read in a loop iteration are answered into per-connection output buffers, which are written
+ * once at the end of the iteration. A connection whose replies cannot be written is not read from until
+ * they are, pushing back on the client. A connection addressing a session of another group is handed over
+ * to that group's loop, buffers included, at the end of the iteration once its key is deregistered here.
+ * <p>
+ * Sessions are tied to the connection that created them: once it is closed, every loop it created sessions in
+ * releases those it did not close itself.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+final class EventLoop implements Runnable {
+
+    private final RaceServer server;
+    private final int group;
+    private final Selector selector;
+    private final GameStore store;
+    /**
+     * The connection which created each session, or null if the session is not active.
+     */
+    private final Connection[] creators;
+    /**
+     * Whether or not a connection which created sessions here was closed since the last release.
+     */
+    private volatile boolean releasePending;
+    private final SpectatorHub spectators;
+    private final GameRandom random = new GameRandom(0);
+    private final Telemetry telemetry = Telemetry.global();
+    /**
+     * The moves made and score gained in this loop iteration, recorded in the telemetry at its end.
+     */
+    private long pendingMoves;
+    private long pendingScore;
+    /**
+     * Connections handed to this loop by the acceptor or by other loops.
+     */
+    private final ConcurrentLinkedQueue<Connection> newConnections = new ConcurrentLinkedQueue<>();
+    /**
+     * The connections with output to write at the end of this loop iteration. Spectators are written after
+     * players, so replies are not held back by the fan-out of the moves they made.
+     */
+    private final ArrayList<Connection> flushQueue = new ArrayList<>();
+    private final ArrayList<Connection> spectatorFlushQueue = new ArrayList<>();
+    /**
+     * The connections to hand over to other loops at the end of this loop iteration.
+     */
+    private final ArrayList<Connection> handovers = new ArrayList<>();
+    private final long seedBase;
+    private long seedCounter;
+    /**
+     * The amount of active sessions, for statistics.
+     */
+    private volatile int activeSessions;
+
+    EventLoop(RaceServer server, int group, BoardRules rules, int capacity, long seedBase) throws IOException {
+        this.server = server;
+        this.group = group;
+        this.seedBase = seedBase;
+        selector = Selector.open();
+        store = new GameStore(rules, capacity);
+        creators = new Connection[capacity];
+        spectators = new SpectatorHub(this, store, group * capacity);
+    }
+
+    /**
+     * Hands a connection to this loop, from any thread.
+     *
+     * @param connection connection, not registered with any loop
+     */
+    void register(Connection connection) {
+        newConnections.add(connection);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (server.isRunning()) {
+            try {
+                // Keys selected while deregistering handed over connections are still to be served
+                if (selector.selectedKeys().isEmpty() && newConnections.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                registerNewConnections();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isReadable()) {
+                        read(connection);
+                    } else if (key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+                flushQueued();
+                handOverPending();
+                releaseClosed();
+                recordTelemetry();
+            } catch (IOException e) {
+                System.err.println("Connection group " + group + ": " + e);
+            }
+        }
+    }
+
+    private void registerNewConnections() throws IOException {
+        Connection connection;
+
+        while ((connection = newConnections.poll()) != null) {
+            connection.channel.configureBlocking(false);
+            connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+
+            // Answering what a handed over connection had already sent
+            if (connection.in.position() > 0 || connection.out.position() > 0) {
+                process(connection);
+            }
+        }
+    }
+
+    private void read(Connection connection) {
+        int read;
+
+        try {
+            read = connection.channel.read(connection.in);
+        } catch (IOException e) {
+            read = -1;
+        }
+
+        if (read < 0) {
+            close(connection);
+        } else if (connection.broadcast != null) {
+            // Spectators have nothing more to say
+            connection.in.clear();
+        } else {
+            process(connection);
+        }
+    }
+
+    /**
+     * Answers the buffered requests while there is room for their replies.
+     *
+     * @param connection connection
+     */
+    private void process(Connection connection) {
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        int handover = -1;
+        in.flip();
+
+        while (in.remaining() >= Protocol.REQUEST_SIZE && out.remaining() >= Protocol.REPLY_SIZE
+                && connection.broadcast == null) {
+            handover = handle(connection, in, out);
+
+            if (handover != -1) {
+                in.position(in.position() - Protocol.REQUEST_SIZE);
+                break;
+            }
+        }
+        in.compact();
+
+        if (handover != -1) {
+            handOver(connection, handover);
+        } else if (out.position() > 0) {
+            queueFlush(connection);
+        }
+    }
+
+    /**
+     * Answers a request.
+     *
+     * @param connection connection
+     * @param in         request, in read mode
+     * @param out        reply destination
+     * @return the group the connection must be handed over to for this request, or -1
+     */
+    private int handle(Connection connection, ByteBuffer in, ByteBuffer out) {
+        int opcode = in.get() & 0xFF;
+        int argument = in.get() & 0xFF;
+        in.getShort();
+        int session = in.getInt();
+        int owner = session / store.getCapacity();
+
+        if (opcode != Protocol.OP_CREATE && opcode != Protocol.OP_STATS
+                && session >= 0 && owner != group && owner < server.getGroupCount()) {
+            return owner;
+        }
+        int id = session - group * store.getCapacity();
+        boolean known = session >= 0 && store.isActive(id);
+
+        switch (opcode) {
+            case Protocol.OP_CREATE:
+                id = store.create(GameRandom.mix(seedBase + seedCounter++), random);
+
+                if (id == -1) {
+                    Protocol.putReply(out, opcode, Protocol.STATUS_FULL, -1, 0, 0, 0);
+                } else {
+                    activeSessions++;
+                    creators[id] = connection;
+
+                    if (connection.createdIn == null) {
+                        connection.createdIn = new boolean[server.getGroupCount()];
+                    }
+                    connection.createdIn[group] = true;
+                    putState(out, opcode, Protocol.STATUS_OK, id);
+                }
+                break;
+            case Protocol.OP_MOVE:
+                if (!known) {
+                    Protocol.putReply(out, opcode, Protocol.STATUS_UNKNOWN_SESSION, session, 0, 0, 0);
+                } else if (argument > BoardRules.RIGHT) {
+                    Protocol.putReply(out, opcode, Protocol.STATUS_BAD_REQUEST, session, 0, 0, 0);
+                } else {
+                    long before = store.getBoard(id);
+                    int score = store.getScore(id);
+                    boolean moved = store.move(id, argument, random);
+                    putState(out, opcode, moved ? Protocol.STATUS_OK : Protocol.STATUS_GAME_OVER, id);
+
+                    if (moved) {
+                        spectators.publishMove(id, argument, before, store.getScore(id) - score);
+                        recordMove(id, store.getScore(id) - score);
+                    }
+                }
+                break;
+            case Protocol.OP_STATE:
+                if (!known) {
+                    Protocol.putReply(out, opcode, Protocol.STATUS_UNKNOWN_SESSION, session, 0, 0, 0);
+                } else {
+                    putState(out, opcode, Protocol.STATUS_OK, id);
+                }
+                break;
+            case Protocol.OP_CLOSE:
+                if (!known) {
+                    Protocol.putReply(out, opcode, Protocol.STATUS_UNKNOWN_SESSION, session, 0, 0, 0);
+                } else {
+                    putState(out, opcode, Protocol.STATUS_OK, id);
+                    release(id);
+                }
+                break;
+            case Protocol.OP_SUBSCRIBE:
+                if (!known) {
+                    Protocol.putReply(out, opcode, Protocol.STATUS_UNKNOWN_SESSION, session, 0, 0, 0);
+                } else {
+                    putState(out, opcode, Protocol.STATUS_OK, id);
+                    spectators.subscribe(connection, id);
+                }
+                break;
+            case Protocol.OP_STATS:
+                Runtime runtime = Runtime.getRuntime();
+                Protocol.putReply(out, opcode, Protocol.STATUS_OK, server.getActiveSessions(),
+                        runtime.totalMemory() - runtime.freeMemory(), GameStore.BYTES_PER_GAME,
+                        server.getGroupCount());
+                break;
+            default:
+                Protocol.putReply(out, opcode, Protocol.STATUS_BAD_REQUEST, session, 0, 0, 0);
+                break;
+        }
+        return -1;
+    }
+
+    /**
+     * Counts a move for the telemetry, and records the game if the move ended it.
+     *
+     * @param id    game id
+     * @param score score gained by the move
+     */
+    private void recordMove(int id, int score) {
+        pendingMoves++;
+        pendingScore += score;
+        long board = store.getBoard(id);
+
+        if (!store.getRules().hasMoves(board)) {
+            telemetry.recordGameOver(store.getScore(id), store.getRules().maxValue(board));
+        }
+    }
+
+    /**
+     * Records the moves made in this loop iteration in the telemetry.
+     */
+    private void recordTelemetry() {
+        if (pendingMoves > 0) {
+            telemetry.recordMoves(pendingMoves);
+            telemetry.recordScore(pendingScore);
+            pendingMoves = 0;
+            pendingScore = 0;
+        }
+    }
+
+    /**
+     * Ends a session, disconnecting its spectators.
+     *
+     * @param id session id in this group
+     */
+    private void release(int id) {
+        spectators.closeSession(id);
+        store.release(id);
+        creators[id] = null;
+        activeSessions--;
+    }
+
+    /**
+     * Releases the sessions created by connections closed since the last release.
+     */
+    private void releaseClosed() {
+        if (!releasePending) {
+            return;
+        }
+        // Cleared first, so a connection closed during the scan leads to another one
+        releasePending = false;
+
+        for (int id = 0; id < creators.length; id++) {
+            Connection creator = creators[id];
+
+            if (creator != null && creator.closed) {
+                release(id);
+            }
+        }
+    }
+
+    /**
+     * Notes that a connection which created sessions here was closed, from any thread.
+     */
+    void connectionClosed() {
+        releasePending = true;
+        selector.wakeup();
+    }
+
+    private void putState(ByteBuffer out, int opcode, int status, int id) {
+        Protocol.putReply(out, opcode, status, group * store.getCapacity() + id,
+                store.getBoard(id), store.getScore(id), store.getMoveCount(id));
+    }
+
+    /**
+     * Stops serving a connection, to move it to another loop with its unanswered requests and unsent replies at
+     * the end of this loop iteration.
+     *
+     * @param connection connection, not a spectator
+     * @param target     group to move to
+     */
+    private void handOver(Connection connection, int target) {
+        connection.key.cancel();
+        connection.handoverGroup = target;
+
+        if (connection.flushQueued) {
+            connection.flushQueued = false;
+            flushQueue.remove(connection);
+        }
+        handovers.add(connection);
+    }
+
+    /**
+     * Moves the connections stopped this loop iteration to their new loops. Their cancelled keys are
+     * deregistered first, as registering a channel again with this selector while its cancelled key remains
+     * fails, which a connection moving back here before this loop selects again would do.
+     *
+     * @throws IOException if selecting fails
+     */
+    private void handOverPending() throws IOException {
+        if (handovers.isEmpty()) {
+            return;
+        }
+        selector.selectNow();
+
+        for (int i = 0; i < handovers.size(); i++) {
+            Connection connection = handovers.get(i);
+            server.getLoop(connection.handoverGroup).register(connection);
+        }
+        handovers.clear();
+    }
+
+    /**
+     * Queues a connection to be flushed at the end of this loop iteration.
+     *
+     * @param connection connection
+     */
+    void queueFlush(Connection connection) {
+        if (!connection.flushQueued) {
+            connection.flushQueued = true;
+            (connection.broadcast == null ? flushQueue : spectatorFlushQueue).add(connection);
+        }
+    }
+
+    private void flushQueued() {
+        flushQueued(flushQueue);
+        flushQueued(spectatorFlushQueue);
+    }
+
+    private void flushQueued(ArrayList<Connection> queue) {
+        for (int i = 0; i < queue.size(); i++) {
+            Connection connection = queue.get(i);
+            connection.flushQueued = false;
+            flush(connection);
+        }
+        queue.clear();
+    }
+
+    /**
+     * Writes as much buffered output as the socket accepts. Reading is paused until all replies are written,
+     * spectators keep being read from to notice them leaving.
+     *
+     * @param connection connection
+     */
+    private void flush(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        ByteBuffer out = connection.out;
+        boolean done;
+
+        try {
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+            done = out.position() == 0;
+
+            if (done && connection.broadcast != null) {
+                done = SpectatorHub.write(connection);
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+
+        if (connection.broadcast != null) {
+            connection.key.interestOps(SelectionKey.OP_READ | (done ? 0 : SelectionKey.OP_WRITE));
+        } else if (!done) {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            connection.key.interestOps(SelectionKey.OP_READ);
+
+            // Requests left unanswered while the output was full
+            if (connection.in.position() >= Protocol.REQUEST_SIZE) {
+                process(connection);
+            }
+        }
+    }
+
+    /**
+     * Closes a connection, ending its spectating and the sessions it created.
+     *
+     * @param connection connection
+     */
+    void close(Connection connection) {
+        if (connection.broadcast != null) {
+            spectators.unsubscribe(connection);
+        }
+        connection.key.cancel();
+
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+
+        if (connection.createdIn != null && !connection.closed) {
+            connection.closed = true;
+
+            for (int target = 0; target < connection.createdIn.length; target++) {
+                if (connection.createdIn[target]) {
+                    server.getLoop(target).connectionClosed();
+                }
+            }
+        }
+    }
+
+    int getActiveSessions() {
+        return activeSessions;
+    }
+
+    void wakeup() {
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.server;
+
+import notpure.game2048.util.LatencyHistogram;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Drives a {@link RaceServer} with random moves over many connections and reports throughput, move latency
+ * percentiles and session density. Each connection plays its own sessions, pipelining a batch of requests
+ * per round trip, and replaces every finished game with a new one.
+ * <p>
+ * Usage: {@code LoadGenerator [port] [connections] [sessions per connection] [seconds] [pipeline depth]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class LoadGenerator {
+
+    private static final int PLAYING = 0;
+    private static final int FINISHED = 1;
+    private static final int CLOSED = 2;
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : RaceServer.DEFAULT_PORT;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int pipeline = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+
+        // Running the clients
+        Client[] clients = new Client[connections];
+        Thread[] threads = new Thread[connections];
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch played = new CountDownLatch(connections);
+        CountDownLatch measured = new CountDownLatch(1);
+
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new Client(address, sessions, pipeline, deadline, i, played, measured);
+            threads[i] = new Thread(clients[i], "load-" + i);
+            threads[i].start();
+        }
+
+        // Measuring the session density while all sessions are still open
+        played.await();
+        printStats(address);
+        measured.countDown();
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        long moves = 0;
+        long games = 0;
+
+        for (int i = 0; i < connections; i++) {
+            threads[i].join();
+
+            if (clients[i].failure != null) {
+                throw clients[i].failure;
+            }
+            latencies.merge(clients[i].latencies);
+            moves += clients[i].moves;
+            games += clients[i].finishedGames;
+        }
+
+        // Reporting
+        System.out.printf("Moves: %d in %ds (%.0f moves/s), %d games finished%n",
+                moves, seconds, (double) moves / seconds, games);
+        System.out.printf("Request latency (us): mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                latencies.getMean() / 1e3, latencies.percentile(0.5) / 1e3, latencies.percentile(0.9) / 1e3,
+                latencies.percentile(0.99) / 1e3, latencies.percentile(0.999) / 1e3, latencies.getMax() / 1e3);
+    }
+
+    /**
+     * Queries and prints the session density of the server.
+     *
+     * @param address server address
+     * @throws IOException if the query fails
+     */
+    private static void printStats(InetSocketAddress address) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Protocol.REPLY_SIZE);
+            Protocol.putRequest(buffer, Protocol.OP_STATS, 0, 0);
+            buffer.flip();
+            channel.write(buffer);
+            buffer.clear();
+            readFully(channel, buffer);
+            buffer.flip();
+            buffer.getInt();
+            int activeSessions = buffer.getInt();
+            long heapBytes = buffer.getLong();
+            int bytesPerSession = buffer.getInt();
+            double gib = 1L << 30;
+
+            System.out.printf("Sessions: %d active, storage %d bytes/session (%.1fM sessions/GiB)%n",
+                    activeSessions, bytesPerSession, gib / bytesPerSession / 1e6);
+
+            if (activeSessions > 0) {
+                double heapPerSession = (double) heapBytes / activeSessions;
+                System.out.printf("Server heap in use: %d bytes, %.1f bytes/session (%.1fM sessions/GiB)%n",
+                        heapBytes, heapPerSession, gib / heapPerSession / 1e6);
+            }
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    /**
+     * One connection playing its own sessions.
+     */
+    private static final class Client implements Runnable {
+
+        private final InetSocketAddress address;
+        private final int[] sessions;
+        private final int[] states;
+        private final int pipeline;
+        private final long deadline;
+        private final Random random;
+        private final ByteBuffer out;
+        private final ByteBuffer in;
+        /**
+         * The session slot of each request in the current batch.
+         */
+        private final int[] batchSlots;
+        private final CountDownLatch played;
+        private final CountDownLatch measured;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private long moves;
+        private long finishedGames;
+        private int cursor;
+        private Exception failure;
+
+        private Client(InetSocketAddress address, int sessions, int pipeline, long deadline, long seed,
+                       CountDownLatch played, CountDownLatch measured) {
+            this.address = address;
+            this.played = played;
+            this.measured = measured;
+            this.sessions = new int[sessions];
+            this.pipeline = pipeline;
+            this.deadline = deadline;
+            states = new int[sessions];
+            random = new Random(seed);
+            out = ByteBuffer.allocateDirect(pipeline * Protocol.REQUEST_SIZE);
+            in = ByteBuffer.allocateDirect(pipeline * Protocol.REPLY_SIZE);
+            batchSlots = new int[pipeline];
+        }
+
+        @Override
+        public void run() {
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                // Every slot starts without a session
+                for (int i = 0; i < states.length; i++) {
+                    states[i] = CLOSED;
+                }
+
+                try {
+                    while (System.nanoTime() < deadline) {
+                        roundTrip(channel);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    played.countDown();
+                }
+                measured.await();
+                closeSessions(channel);
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        /**
+         * Closes the sessions still open, as long as the connection works. Those left open are ended by the
+         * server once the connection is closed.
+         *
+         * @param channel connection
+         * @throws IOException if the connection fails
+         */
+        private void closeSessions(SocketChannel channel) throws IOException {
+            out.clear();
+
+            for (int i = 0; i < states.length; i++) {
+                if (states[i] != CLOSED) {
+                    Protocol.putRequest(out, Protocol.OP_CLOSE, 0, sessions[i]);
+                }
+
+                if (!out.hasRemaining() || i == states.length - 1) {
+                    int requests = out.position() / Protocol.REQUEST_SIZE;
+                    out.flip();
+
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    in.clear().limit(requests * Protocol.REPLY_SIZE);
+                    readFully(channel, in);
+                    out.clear();
+                }
+            }
+        }
+
+        /**
+         * Sends a batch of requests, one per session slot in turn, and reads their replies.
+         *
+         * @param channel connection
+         * @throws IOException if the connection fails
+         */
+        private void roundTrip(SocketChannel channel) throws IOException {
+            int batch = Math.min(pipeline, sessions.length);
+            out.clear();
+
+            for (int i = 0; i < batch; i++) {
+                int slot = cursor;
+                cursor = (cursor + 1) % sessions.length;
+                batchSlots[i] = slot;
+
+                switch (states[slot]) {
+                    case PLAYING:
+                        Protocol.putRequest(out, Protocol.OP_MOVE, random.nextInt(4), sessions[slot]);
+                        break;
+                    case FINISHED:
+                        Protocol.putRequest(out, Protocol.OP_CLOSE, 0, sessions[slot]);
+                        break;
+                    default:
+                        Protocol.putRequest(out, Protocol.OP_CREATE, 0, 0);
+                        break;
+                }
+            }
+            out.flip();
+            long sent = System.nanoTime();
+
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            in.clear();
+            int replies = 0;
+
+            while (replies < batch) {
+                if (channel.read(in) < 0) {
+                    throw new EOFException("Server closed the connection");
+                }
+                in.flip();
+
+                while (in.remaining() >= Protocol.REPLY_SIZE && replies < batch) {
+                    latencies.record(System.nanoTime() - sent);
+                    handleReply(batchSlots[replies++]);
+                }
+                in.compact();
+            }
+        }
+
+        private void handleReply(int slot) throws IOException {
+            int opcode = in.get() & 0xFF;
+            int status = in.get() & 0xFF;
+            in.getShort();
+            int session = in.getInt();
+            in.getLong();
+            in.getLong();
+
+            switch (opcode) {
+                case Protocol.OP_CREATE:
+                    if (status != Protocol.STATUS_OK) {
+                        throw new IOException("Unable to create a session, status " + status);
+                    }
+                    sessions[slot] = session;
+                    states[slot] = PLAYING;
+                    break;
+                case Protocol.OP_MOVE:
+                    if (status == Protocol.STATUS_OK) {
+                        moves++;
+                    } else if (status == Protocol.STATUS_GAME_OVER) {
+                        states[slot] = FINISHED;
+                        finishedGames++;
+                    } else {
+                        throw new IOException("Move rejected, status " + status);
+                    }
+                    break;
+                case Protocol.OP_CLOSE:
+                    states[slot] = CLOSED;
+                    break;
+                default:
+                    throw new IOException("Unexpected reply opcode " + opcode);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol of the {@link RaceServer}. All frames have a fixed size and are big-endian, so many
+ * requests can be pipelined and their replies arrive in the same order.
+ * <p>
+ * Request, {@value #REQUEST_SIZE} bytes: {@code opcode:u8, argument:u8, reserved:u16, session:i32}.
+ * <br>
+ * Reply, {@value #REPLY_SIZE} bytes: {@code opcode:u8, status:u8, reserved:u16, session:i32, board:i64,
+ * score:i32, moves:i32}, where board is packed as by {@link notpure.game2048.model.board.BoardRules}.
+ * <p>
+ * A connection is served by the connection group owning the last session it addressed, so requests for a
+ * session in another group move the connection to that group.
+ * <p>
+ * After a successful {@link #OP_SUBSCRIBE} the connection becomes a spectator stream: its reply is the first
+ * keyframe, further requests are ignored, and the server sends a {@link #FRAME_DELTA} after every move of the
+ * session and a {@link #FRAME_KEYFRAME} periodically or after the spectator fell too far behind.
+ * <br>
+ * Delta frame, {@value #DELTA_HEADER_SIZE} bytes plus one nibble per changed cell: {@code opcode:u8,
+ * spawn:u8, changed:u16, session:i32, score delta:i32, exponents}, where spawn is {@code cell << 4 | exponent}
+ * of the inserted tile (0 if none), changed has bit n set if cell n changed, and exponents holds the new
+ * exponent of each changed cell in ascending cell order, two per byte, low nibble first.
+ * <br>
+ * Keyframe, {@value #REPLY_SIZE} bytes, laid out as a reply with status 0.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class Protocol {
+
+    public static final int REQUEST_SIZE = 8;
+    public static final int REPLY_SIZE = 24;
+    public static final int DELTA_HEADER_SIZE = 12;
+
+    /**
+     * Starts a new game, the session field is ignored. The game ends when the connection creating it is closed,
+     * if it is not closed before.
+     */
+    public static final int OP_CREATE = 1;
+    /**
+     * Performs a move, the argument is a {@link notpure.game2048.model.tile.TileGrid.Direction} ordinal.
+     */
+    public static final int OP_MOVE = 2;
+    /**
+     * Gets the state of a game.
+     */
+    public static final int OP_STATE = 3;
+    /**
+     * Ends a game.
+     */
+    public static final int OP_CLOSE = 4;
+    /**
+     * Gets server statistics: session is the amount of active sessions, board the heap bytes in use,
+     * score the storage bytes per session and moves the amount of connection groups.
+     */
+    public static final int OP_STATS = 5;
+    /**
+     * Turns the connection into a spectator stream of a session.
+     */
+    public static final int OP_SUBSCRIBE = 6;
+    /**
+     * The opcode of spectator delta frames.
+     */
+    public static final int FRAME_DELTA = 7;
+    /**
+     * The opcode of spectator keyframes.
+     */
+    public static final int FRAME_KEYFRAME = 8;
+
+    public static final int STATUS_OK = 0;
+    /**
+     * The move was not made, as the game is over.
+     */
+    public static final int STATUS_GAME_OVER = 1;
+    public static final int STATUS_UNKNOWN_SESSION = 2;
+    /**
+     * No more sessions can be created by this connection group.
+     */
+    public static final int STATUS_FULL = 3;
+    public static final int STATUS_BAD_REQUEST = 4;
+
+    private Protocol() {
+    }
+
+    /**
+     * Gets the size of a delta frame.
+     *
+     * @param changed changed cells mask
+     * @return size in bytes
+     */
+    public static int deltaSize(int changed) {
+        return DELTA_HEADER_SIZE + (Integer.bitCount(changed) + 1) / 2;
+    }
+
+    /**
+     * Writes a request.
+     *
+     * @param out      destination
+     * @param opcode   opcode
+     * @param argument argument
+     * @param session  session id
+     */
+    public static void putRequest(ByteBuffer out, int opcode, int argument, int session) {
+        out.put((byte) opcode).put((byte) argument).putShort((short) 0).putInt(session);
+    }
+
+    /**
+     * Writes a reply.
+     *
+     * @param out     destination
+     * @param opcode  opcode of the request
+     * @param status  status
+     * @param session session id
+     * @param board   board
+     * @param score   score
+     * @param moves   move count
+     */
+    public static void putReply(ByteBuffer out, int opcode, int status, int session, long board, int score,
+                                int moves) {
+        out.put((byte) opcode).put((byte) status).putShort((short) 0)
+                .putInt(session).putLong(board).putInt(score).putInt(moves);
+    }
+}
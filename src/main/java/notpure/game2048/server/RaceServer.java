@@ -0,0 +1,161 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.server;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameStore;
+import notpure.game2048.telemetry.PrometheusExporter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Hosts many concurrent 4x4 games over the {@link Protocol} on the loopback interface, with spectator streams.
+ * Accepted connections are spread over a fixed number of connection groups, each served by one
+ * {@link EventLoop} thread owning the sessions its connections create.
+ * <p>
+ * Usage: {@code RaceServer [port] [groups] [sessions per group]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class RaceServer {
+
+    public static final int DEFAULT_PORT = 2048;
+    public static final int DEFAULT_SESSIONS_PER_GROUP = 1 << 18;
+
+    private final EventLoop[] loops;
+    private final ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a new RaceServer, bound to the loopback interface.
+     *
+     * @param port             port to listen on
+     * @param groups           amount of connection groups
+     * @param sessionsPerGroup maximum amount of sessions per connection group
+     * @throws IOException if the port cannot be bound
+     */
+    public RaceServer(int port, int groups, int sessionsPerGroup) throws IOException {
+        if ((long) groups * sessionsPerGroup > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many sessions: " + groups + " x " + sessionsPerGroup);
+        }
+        BoardRules rules = new BoardRules(4, 4);
+        long seedBase = System.nanoTime();
+        loops = new EventLoop[groups];
+
+        for (int group = 0; group < groups; group++) {
+            loops[group] = new EventLoop(this, group, rules, sessionsPerGroup, seedBase + ((long) group << 40));
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int sessionsPerGroup = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SESSIONS_PER_GROUP;
+
+        PrometheusExporter.startFromProperties();
+        RaceServer server = new RaceServer(port, groups, sessionsPerGroup);
+        System.out.printf("Listening on port %d with %d connection groups of %d sessions (%d bytes per session)%n",
+                port, groups, sessionsPerGroup, GameStore.BYTES_PER_GAME);
+        server.run();
+    }
+
+    /**
+     * Starts the connection groups and accepts connections until {@link #stop()} is called.
+     *
+     * @throws IOException if accepting fails
+     */
+    public void run() throws IOException {
+        for (int group = 0; group < loops.length; group++) {
+            Thread thread = new Thread(loops[group], "race-group-" + group);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        int next = 0;
+
+        try {
+            while (running) {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(new Connection(channel));
+                next = (next + 1) % loops.length;
+            }
+        } catch (IOException e) {
+            if (running) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and stops the connection groups.
+     *
+     * @throws IOException if the server socket cannot be closed
+     */
+    public void stop() throws IOException {
+        running = false;
+        serverChannel.close();
+
+        for (EventLoop loop : loops) {
+            loop.wakeup();
+        }
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return port
+     * @throws IOException if the server socket is closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    EventLoop getLoop(int group) {
+        return loops[group];
+    }
+
+    int getGroupCount() {
+        return loops.length;
+    }
+
+    /**
+     * Gets the amount of active sessions across all connection groups.
+     *
+     * @return active sessions
+     */
+    int getActiveSessions() {
+        int sessions = 0;
+
+        for (EventLoop loop : loops) {
+            sessions += loop.getActiveSessions();
+        }
+        return sessions;
+    }
+}
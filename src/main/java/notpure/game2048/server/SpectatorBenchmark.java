@@ -0,0 +1,426 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.server;
+
+import notpure.game2048.model.board.BoardRules;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Measures spectator broadcasting: an in-process {@link RaceServer} plays a few sessions at a fixed move rate
+ * while many spectator connections watch them. Reports the bytes per second received by spectators and the
+ * server CPU time per 1,000 spectators, and checks every delta against the keyframes that follow it.
+ * <p>
+ * Usage: {@code SpectatorBenchmark [spectators] [sessions] [moves per second] [seconds]}
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class SpectatorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int spectatorCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int sessionCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int movesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        // Starting the server
+        final RaceServer server = new RaceServer(0, Runtime.getRuntime().availableProcessors(), 1 << 16);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "race-acceptor");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+
+        // Playing the sessions and connecting the spectators
+        AtomicIntegerArray sessions = new AtomicIntegerArray(sessionCount);
+        Player player = new Player(address, sessions, movesPerSecond);
+        player.createSessions();
+        Thread playerThread = new Thread(player, "benchmark-player");
+        playerThread.setDaemon(true);
+        playerThread.start();
+        Spectators spectators = new Spectators(address, sessions, spectatorCount);
+
+        // Warming up, then measuring
+        spectators.runFor(2_000_000_000L);
+        spectators.resetCounters();
+        long movesBefore = player.moves;
+        long cpuBefore = serverCpuNanos();
+        long start = System.nanoTime();
+        spectators.runFor(seconds * 1_000_000_000L);
+        double wall = (System.nanoTime() - start) / 1e9;
+        double cpu = (serverCpuNanos() - cpuBefore) / 1e9;
+        long moves = player.moves - movesBefore;
+        player.running = false;
+        server.stop();
+
+        if (player.failure != null) {
+            throw player.failure;
+        }
+        System.out.printf("Spectators: %d on %d sessions, %.0f moves/s played%n",
+                spectatorCount, sessionCount, moves / wall);
+        System.out.printf("Received: %.0f bytes/s, %.0f deltas/s (%.1f bytes/delta vs %d bytes/full state), %.0f keyframes/s%n",
+                spectators.bytes / wall, spectators.deltas / wall, (double) spectators.deltaBytes / Math.max(1, spectators.deltas),
+                Protocol.REPLY_SIZE, spectators.keyframes / wall);
+        System.out.printf("Server CPU: %.3f cores total, %.3f cores per 1,000 spectators%n",
+                cpu / wall, cpu / wall / (spectatorCount / 1000.0));
+        System.out.printf("Deltas checked against keyframes: %d, mismatches: %d, resubscriptions: %d%n",
+                spectators.checked, spectators.mismatches, spectators.resubscriptions);
+    }
+
+    /**
+     * Sums the CPU time of the server's connection group threads.
+     *
+     * @return CPU time in nanoseconds
+     */
+    private static long serverCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long total = 0;
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("race-group-")) {
+                total += Math.max(0, threads.getThreadCpuTime(thread.getId()));
+            }
+        }
+        return total;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    /**
+     * Plays the sessions at a fixed rate, one move per session a round, replacing finished games. Moves keep the
+     * tiles in a corner so games last long enough to be watched.
+     */
+    private static final class Player implements Runnable {
+
+        private static final int[] PREFERENCE = { BoardRules.DOWN, BoardRules.LEFT, BoardRules.RIGHT, BoardRules.UP };
+        private final InetSocketAddress address;
+        private final AtomicIntegerArray sessions;
+        private final long[] boards;
+        private final int movesPerSecond;
+        private final BoardRules rules = new BoardRules(4, 4);
+        private final ByteBuffer out;
+        private final ByteBuffer in;
+        private SocketChannel channel;
+        private volatile boolean running = true;
+        private volatile long moves;
+        private Exception failure;
+
+        private Player(InetSocketAddress address, AtomicIntegerArray sessions, int movesPerSecond) {
+            this.address = address;
+            this.sessions = sessions;
+            this.movesPerSecond = movesPerSecond;
+            boards = new long[sessions.length()];
+            out = ByteBuffer.allocate(sessions.length() * Protocol.REQUEST_SIZE);
+            in = ByteBuffer.allocate(sessions.length() * Protocol.REPLY_SIZE);
+        }
+
+        private void createSessions() throws IOException {
+            channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            for (int i = 0; i < sessions.length(); i++) {
+                create(i);
+            }
+        }
+
+        private void create(int slot) throws IOException {
+            request(Protocol.OP_CREATE, 0, 0);
+            sessions.set(slot, in.getInt(4));
+            boards[slot] = in.getLong(8);
+        }
+
+        private void request(int opcode, int argument, int session) throws IOException {
+            out.clear();
+            Protocol.putRequest(out, opcode, argument, session);
+            out.flip();
+            channel.write(out);
+            in.clear().limit(Protocol.REPLY_SIZE);
+            readFully(channel, in);
+        }
+
+        private int chooseMove(long board) {
+            for (int dir : PREFERENCE) {
+                if (rules.move(board, dir) != board) {
+                    return dir;
+                }
+            }
+            return BoardRules.UP;
+        }
+
+        @Override
+        public void run() {
+            int count = sessions.length();
+            long interval = 1_000_000_000L * count / movesPerSecond;
+            long next = System.nanoTime();
+
+            try {
+                while (running) {
+                    out.clear();
+
+                    for (int i = 0; i < count; i++) {
+                        Protocol.putRequest(out, Protocol.OP_MOVE, chooseMove(boards[i]), sessions.get(i));
+                    }
+                    out.flip();
+
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    in.clear();
+                    readFully(channel, in);
+
+                    for (int i = 0; i < count; i++) {
+                        if (in.get(i * Protocol.REPLY_SIZE + 1) == Protocol.STATUS_OK) {
+                            boards[i] = in.getLong(i * Protocol.REPLY_SIZE + 8);
+                            moves++;
+                        } else {
+                            boards[i] = 0;
+                        }
+                    }
+
+                    for (int i = 0; i < count; i++) {
+                        if (boards[i] == 0) {
+                            // Replacing the finished game, its spectators are disconnected and move on
+                            int finished = sessions.get(i);
+                            create(i);
+                            request(Protocol.OP_CLOSE, 0, finished);
+                        }
+                    }
+                    next += interval;
+                    long sleep = next - System.nanoTime();
+
+                    if (sleep > 0) {
+                        Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Many spectator connections, read by one selector thread, checking every delta against the next keyframe.
+     */
+    private static final class Spectators {
+
+        private final InetSocketAddress address;
+        private final AtomicIntegerArray sessions;
+        private final Selector selector;
+        private final Random random = new Random(2);
+        private long bytes;
+        private long deltas;
+        private long deltaBytes;
+        private long keyframes;
+        private long checked;
+        private long mismatches;
+        private long resubscriptions;
+
+        private Spectators(InetSocketAddress address, AtomicIntegerArray sessions, int count) throws IOException {
+            this.address = address;
+            this.sessions = sessions;
+            selector = Selector.open();
+
+            for (int i = 0; i < count; i++) {
+                subscribe();
+            }
+        }
+
+        private void subscribe() throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT, new Spectator());
+        }
+
+        private void connected(SelectionKey key) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            channel.finishConnect();
+            ByteBuffer request = ByteBuffer.allocate(Protocol.REQUEST_SIZE);
+            Protocol.putRequest(request, Protocol.OP_SUBSCRIBE, 0, sessions.get(random.nextInt(sessions.length())));
+            request.flip();
+            channel.write(request);
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void resetCounters() {
+            bytes = 0;
+            deltas = 0;
+            deltaBytes = 0;
+            keyframes = 0;
+        }
+
+        private void runFor(long nanos) throws IOException {
+            long end = System.nanoTime() + nanos;
+
+            while (System.nanoTime() < end) {
+                selector.select(100);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Spectator spectator = (Spectator) key.attachment();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    int read;
+
+                    if (key.isConnectable()) {
+                        connected(key);
+                        continue;
+                    }
+
+                    try {
+                        read = channel.read(spectator.in);
+                    } catch (IOException e) {
+                        read = -1;
+                    }
+
+                    if (read < 0) {
+                        // The watched game ended
+                        key.cancel();
+                        channel.close();
+                        resubscriptions++;
+                        subscribe();
+                        continue;
+                    }
+                    bytes += read;
+                    spectator.in.flip();
+
+                    boolean subscribed = true;
+
+                    while (subscribed && parse(spectator)) {
+                        subscribed = spectator.subscribed;
+                    }
+                    spectator.in.compact();
+
+                    if (!subscribed) {
+                        // The game ended before the subscription arrived
+                        key.cancel();
+                        channel.close();
+                        resubscriptions++;
+                        subscribe();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parses one frame, applying deltas to the spectator's board and checking it against keyframes.
+         *
+         * @param spectator spectator
+         * @return whether or not a complete frame was parsed
+         */
+        private boolean parse(Spectator spectator) {
+            ByteBuffer in = spectator.in;
+
+            if (in.remaining() < Protocol.DELTA_HEADER_SIZE) {
+                return false;
+            }
+            int start = in.position();
+            int opcode = in.get(start) & 0xFF;
+
+            if (opcode == Protocol.FRAME_DELTA) {
+                int changed = in.getShort(start + 2) & 0xFFFF;
+                int size = Protocol.deltaSize(changed);
+
+                if (in.remaining() < size) {
+                    return false;
+                }
+                int count = 0;
+
+                for (int cell = 0; cell < 16; cell++) {
+                    if ((changed & (1 << cell)) != 0) {
+                        int exponent = (in.get(start + Protocol.DELTA_HEADER_SIZE + count / 2) >> (4 * (count & 1))) & 0xF;
+                        spectator.board = BoardRules.setExponent(spectator.board, cell, exponent);
+                        count++;
+                    }
+                }
+                spectator.score += in.getInt(start + 8);
+                spectator.unchecked = true;
+                deltas++;
+                deltaBytes += size;
+                in.position(start + size);
+                return true;
+            }
+
+            if (in.remaining() < Protocol.REPLY_SIZE) {
+                return false;
+            }
+            long board = in.getLong(start + 8);
+            int score = in.getInt(start + 16);
+
+            if (opcode == Protocol.OP_SUBSCRIBE && in.get(start + 1) != Protocol.STATUS_OK) {
+                spectator.subscribed = false;
+            } else if (opcode == Protocol.FRAME_KEYFRAME) {
+                keyframes++;
+
+                if (spectator.unchecked) {
+                    checked++;
+
+                    if (board != spectator.board || score != spectator.score) {
+                        mismatches++;
+                    }
+                }
+            }
+            spectator.board = board;
+            spectator.score = score;
+            spectator.unchecked = false;
+            in.position(start + Protocol.REPLY_SIZE);
+            return true;
+        }
+    }
+
+    /**
+     * The state of a spectator connection: its input and the board rebuilt from the frames.
+     */
+    private static final class Spectator {
+
+        private final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        private long board;
+        private int score;
+        /**
+         * Whether or not deltas were applied since the last keyframe.
+         */
+        private boolean unchecked;
+        private boolean subscribed = true;
+    }
+}
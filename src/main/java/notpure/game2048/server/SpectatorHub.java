@@ -0,0 +1,380 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.server;
+
+import notpure.game2048.model.board.BoardRules;
+import notpure.game2048.model.board.GameStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Broadcasts the moves of watched sessions to their spectators, on the thread of the owning
+ * {@link EventLoop}.
+ * <p>
+ * Every watched session has a {@link Broadcast}: a ring buffer each frame is encoded into once. Spectators
+ * are written to straight from views of the ring, so fanning a frame out copies nothing per spectator.
+ * A spectator about to be overwritten because it fell a full ring behind skips to the newest frame and is
+ * sent a keyframe instead, so a slow spectator never holds back the game or grows the server's memory.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+final class SpectatorHub {
+
+    /**
+     * The ring size of a broadcast, a power of two.
+     */
+    static final int RING_SIZE = 16 * 1024;
+    private static final int RING_MASK = RING_SIZE - 1;
+    /**
+     * The amount of moves between two keyframes of a broadcast.
+     */
+    static final int KEYFRAME_INTERVAL = 64;
+    /**
+     * Cursor markers of spectators lapped by an append: resynchronised, or disconnected as their output
+     * buffer is full too.
+     */
+    private static final long LAPPED = -1;
+    private static final long OVERFLOWED = -2;
+
+    private final EventLoop loop;
+    private final GameStore store;
+    private final BoardRules rules;
+    /**
+     * The id offset of the sessions of this connection group.
+     */
+    private final int idBase;
+    /**
+     * An open-addressed map of session id to broadcast, keys of -1 being free.
+     */
+    private int[] keys = new int[16];
+    private Broadcast[] broadcasts = new Broadcast[16];
+    private int size;
+    private final ByteBuffer frame = ByteBuffer.allocate(Protocol.REPLY_SIZE);
+
+    SpectatorHub(EventLoop loop, GameStore store, int idBase) {
+        this.loop = loop;
+        this.store = store;
+        this.idBase = idBase;
+        rules = store.getRules();
+        Arrays.fill(keys, -1);
+    }
+
+    /**
+     * Turns a connection into a spectator of a session, its reply having been written already.
+     *
+     * @param connection connection
+     * @param id         session id in this group
+     */
+    void subscribe(Connection connection, int id) {
+        Broadcast broadcast = get(id);
+
+        if (broadcast == null) {
+            broadcast = new Broadcast(id);
+            put(id, broadcast);
+        }
+        broadcast.subscribers.add(connection);
+        connection.broadcast = broadcast;
+        connection.cursor = broadcast.head;
+        connection.frameEnd = broadcast.head;
+        connection.ringView = broadcast.ring.duplicate();
+    }
+
+    /**
+     * Stops a spectator, freeing the broadcast once it has no spectators left.
+     *
+     * @param connection spectator connection
+     */
+    void unsubscribe(Connection connection) {
+        Broadcast broadcast = connection.broadcast;
+        connection.broadcast = null;
+        connection.ringView = null;
+        broadcast.subscribers.remove(connection);
+
+        if (broadcast.subscribers.isEmpty()) {
+            remove(broadcast.id);
+        }
+    }
+
+    /**
+     * Broadcasts a move to the spectators of the session, if any.
+     *
+     * @param id         session id in this group
+     * @param dir        direction moved in
+     * @param before     board before the move
+     * @param scoreDelta score gained by the move
+     */
+    void publishMove(int id, int dir, long before, int scoreDelta) {
+        if (size == 0) {
+            return;
+        }
+        Broadcast broadcast = get(id);
+
+        if (broadcast == null) {
+            return;
+        }
+        long after = store.getBoard(id);
+
+        // Changed cells, and the inserted tile
+        long diff = before ^ after;
+        long spawnDiff = rules.move(before, dir) ^ after;
+        int spawn = 0;
+
+        if (spawnDiff != 0) {
+            int cell = Long.numberOfTrailingZeros(spawnDiff) / 4;
+            spawn = (cell << 4) | BoardRules.getExponent(after, cell);
+        }
+        int changed = 0;
+
+        for (int cell = 0; cell < rules.getCells(); cell++) {
+            if (BoardRules.getExponent(diff, cell) != 0) {
+                changed |= 1 << cell;
+            }
+        }
+
+        // Encoding the frame, once for all spectators
+        frame.clear();
+        frame.put((byte) Protocol.FRAME_DELTA).put((byte) spawn).putShort((short) changed)
+                .putInt(idBase + id).putInt(scoreDelta);
+        int nibbles = 0;
+        int count = 0;
+
+        for (int cell = 0; cell < rules.getCells(); cell++) {
+            if ((changed & (1 << cell)) != 0) {
+                nibbles |= BoardRules.getExponent(after, cell) << (4 * (count++ & 1));
+
+                if ((count & 1) == 0) {
+                    frame.put((byte) nibbles);
+                    nibbles = 0;
+                }
+            }
+        }
+
+        if ((count & 1) != 0) {
+            frame.put((byte) nibbles);
+        }
+        frame.flip();
+        append(broadcast, frame);
+
+        if (++broadcast.movesSinceKeyframe >= KEYFRAME_INTERVAL) {
+            broadcast.movesSinceKeyframe = 0;
+            frame.clear();
+            putKeyframe(frame, id);
+            frame.flip();
+            append(broadcast, frame);
+        }
+    }
+
+    /**
+     * Disconnects the spectators of a session which has been closed.
+     *
+     * @param id session id in this group
+     */
+    void closeSession(int id) {
+        Broadcast broadcast = get(id);
+
+        if (broadcast != null) {
+            for (int i = broadcast.subscribers.size() - 1; i >= 0; i--) {
+                loop.close(broadcast.subscribers.get(i));
+            }
+        }
+    }
+
+    /**
+     * Appends a frame to a broadcast and queues its spectators to be flushed.
+     *
+     * @param broadcast broadcast
+     * @param frame     encoded frame, in read mode
+     */
+    private void append(Broadcast broadcast, ByteBuffer frame) {
+        int length = frame.remaining();
+        long head = broadcast.head;
+        ArrayList<Connection> subscribers = broadcast.subscribers;
+        boolean lapped = false;
+
+        // Saving the unsent rest of the frame a lapped spectator is part-way through, before it is overwritten
+        for (int i = 0; i < subscribers.size(); i++) {
+            Connection connection = subscribers.get(i);
+
+            if (head + length - connection.cursor > RING_SIZE) {
+                lapped = true;
+                ByteBuffer out = connection.out;
+
+                if (out.remaining() >= connection.frameEnd - connection.cursor + Protocol.REPLY_SIZE) {
+                    for (long pos = connection.cursor; pos < connection.frameEnd; pos++) {
+                        out.put(broadcast.ring.get((int) (pos & RING_MASK)));
+                    }
+                    connection.cursor = LAPPED;
+                } else {
+                    connection.cursor = OVERFLOWED;
+                }
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            broadcast.ring.put((int) ((head + i) & RING_MASK), frame.get(i));
+        }
+        broadcast.head = head + length;
+
+        for (int i = subscribers.size() - 1; i >= 0; i--) {
+            Connection connection = subscribers.get(i);
+
+            // Skipping a lapped spectator to the newest frame, with a keyframe to resynchronise it
+            if (lapped && connection.cursor == OVERFLOWED) {
+                loop.close(connection);
+                continue;
+            } else if (lapped && connection.cursor == LAPPED) {
+                putKeyframe(connection.out, broadcast.id);
+                connection.cursor = broadcast.head;
+                connection.frameEnd = broadcast.head;
+            }
+            loop.queueFlush(connection);
+        }
+    }
+
+    private void putKeyframe(ByteBuffer out, int id) {
+        Protocol.putReply(out, Protocol.FRAME_KEYFRAME, Protocol.STATUS_OK, idBase + id,
+                store.getBoard(id), store.getScore(id), store.getMoveCount(id));
+    }
+
+    /**
+     * Writes as much of the broadcast as the spectator's socket accepts, after any bytes in its output buffer.
+     *
+     * @param connection spectator connection
+     * @return whether or not everything was written
+     * @throws IOException if writing fails
+     */
+    static boolean write(Connection connection) throws IOException {
+        Broadcast broadcast = connection.broadcast;
+        ByteBuffer view = connection.ringView;
+
+        while (connection.cursor < broadcast.head) {
+            int start = (int) (connection.cursor & RING_MASK);
+            int length = (int) Math.min(broadcast.head - connection.cursor, RING_SIZE - start);
+            view.clear();
+            view.position(start).limit(start + length);
+            int written = connection.channel.write(view);
+            connection.cursor += written;
+
+            if (written < length) {
+                break;
+            }
+        }
+
+        // Tracking the frame boundary, to know what is left of a frame if the spectator gets lapped
+        while (connection.frameEnd < connection.cursor) {
+            connection.frameEnd += frameSize(broadcast.ring, connection.frameEnd);
+        }
+        return connection.cursor == broadcast.head;
+    }
+
+    private static int frameSize(ByteBuffer ring, long pos) {
+        if (ring.get((int) (pos & RING_MASK)) != Protocol.FRAME_DELTA) {
+            return Protocol.REPLY_SIZE;
+        }
+        int changed = ((ring.get((int) ((pos + 2) & RING_MASK)) & 0xFF) << 8)
+                | (ring.get((int) ((pos + 3) & RING_MASK)) & 0xFF);
+        return Protocol.deltaSize(changed);
+    }
+
+    private Broadcast get(int id) {
+        int mask = keys.length - 1;
+
+        for (int slot = mix(id) & mask; keys[slot] != -1; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return broadcasts[slot];
+            }
+        }
+        return null;
+    }
+
+    private void put(int id, Broadcast broadcast) {
+        if ((size + 1) * 2 > keys.length) {
+            int[] oldKeys = keys;
+            Broadcast[] oldBroadcasts = broadcasts;
+            keys = new int[oldKeys.length * 2];
+            broadcasts = new Broadcast[oldKeys.length * 2];
+            Arrays.fill(keys, -1);
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    put(oldKeys[i], oldBroadcasts[i]);
+                }
+            }
+        }
+        int mask = keys.length - 1;
+        int slot = mix(id) & mask;
+
+        while (keys[slot] != -1) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        broadcasts[slot] = broadcast;
+        size++;
+    }
+
+    private void remove(int id) {
+        int mask = keys.length - 1;
+        int slot = mix(id) & mask;
+
+        while (keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+
+        // Backward-shift deletion, keeping every probe sequence unbroken
+        for (int next = (slot + 1) & mask; keys[next] != -1; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                broadcasts[slot] = broadcasts[next];
+                slot = next;
+            }
+        }
+        keys[slot] = -1;
+        broadcasts[slot] = null;
+        size--;
+    }
+
+    private static int mix(int id) {
+        return id * 0x9E3779B9;
+    }
+
+    /**
+     * The frames of one watched session.
+     */
+    static final class Broadcast {
+
+        private final int id;
+        private final ByteBuffer ring = ByteBuffer.allocateDirect(RING_SIZE);
+        private final ArrayList<Connection> subscribers = new ArrayList<>();
+        /**
+         * The amount of bytes appended so far.
+         */
+        private long head;
+        private int movesSinceKeyframe;
+
+        private Broadcast(int id) {
+            this.id = id;
+        }
+    }
+}
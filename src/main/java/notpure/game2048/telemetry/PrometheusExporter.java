@@ -0,0 +1,167 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.telemetry;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports {@link Telemetry} in the Prometheus text format, served over HTTP on the loopback interface at
+ * {@code /metrics}, or written to a file every few seconds for the node exporter's textfile collector.
+ * The file is replaced atomically, so it is never read half written.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class PrometheusExporter implements Closeable {
+
+    /**
+     * The system property giving the port to serve the metrics on.
+     */
+    public static final String PORT_PROPERTY = "game2048.telemetry.port";
+    /**
+     * The system property naming the file to write the metrics to.
+     */
+    public static final String FILE_PROPERTY = "game2048.telemetry.file";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int WRITE_INTERVAL_SECONDS = 5;
+
+    private final Telemetry telemetry;
+    private HttpServer server;
+    private ScheduledExecutorService writer;
+
+    /**
+     * Constructs a new PrometheusExporter.
+     *
+     * @param telemetry telemetry to export
+     */
+    public PrometheusExporter(Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Starts exporting the global telemetry as configured by {@value #PORT_PROPERTY} and {@value #FILE_PROPERTY}.
+     *
+     * @return exporter, or null if neither property is set
+     * @throws IOException if the port cannot be bound
+     */
+    public static PrometheusExporter startFromProperties() throws IOException {
+        String port = System.getProperty(PORT_PROPERTY);
+        String file = System.getProperty(FILE_PROPERTY);
+
+        if (port == null && file == null) {
+            return null;
+        }
+        PrometheusExporter exporter = new PrometheusExporter(Telemetry.global());
+
+        if (port != null) {
+            exporter.serve(Integer.parseInt(port));
+        }
+
+        if (file != null) {
+            exporter.writeEvery(Paths.get(file), WRITE_INTERVAL_SECONDS);
+        }
+        return exporter;
+    }
+
+    /**
+     * Serves the metrics at {@code http://127.0.0.1:<port>/metrics}.
+     *
+     * @param port port, 0 for any
+     * @return the port bound
+     * @throws IOException if the port cannot be bound
+     */
+    public int serve(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = render();
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Writes the metrics to a file periodically, from a daemon thread.
+     *
+     * @param file    destination
+     * @param seconds seconds between writes
+     */
+    public void writeEvery(Path file, int seconds) {
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "telemetry-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleAtFixedRate(() -> {
+            try {
+                write(file);
+            } catch (IOException e) {
+                System.err.println("Unable to write telemetry to " + file + ": " + e);
+            }
+        }, 0, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes the metrics to a file, replacing it atomically.
+     *
+     * @param file destination
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, render());
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private byte[] render() {
+        StringBuilder out = new StringBuilder(2048);
+        telemetry.writePrometheus(out);
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+
+        if (writer != null) {
+            writer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.telemetry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events over a sliding window of time, for rates, along with the total since creation.
+ * Threads count into stripes of their own, picked by thread id, so frequent events from many threads do not
+ * contend on one cell; adding never locks nor allocates.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class RollingCounter {
+
+    /**
+     * The cells between the rows of two stripes, so stripes do not share cache lines.
+     */
+    private static final int PADDING = 8;
+
+    private final RollingWindow window;
+    private final AtomicLongArray cells;
+    private final int stripeMask;
+    private final int stride;
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Constructs a new RollingCounter.
+     *
+     * @param windowSeconds length of the window
+     * @param slices        amount of slices the window is split into, the rate being updated once per slice
+     */
+    public RollingCounter(int windowSeconds, int slices) {
+        window = new RollingWindow(windowSeconds, slices);
+        int stripes = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+        stripeMask = stripes - 1;
+        stride = slices + PADDING;
+        cells = new AtomicLongArray(stripes * stride);
+    }
+
+    /**
+     * Counts an event.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Counts events.
+     *
+     * @param n amount of events
+     */
+    public void add(long n) {
+        long slice = window.now();
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        RollingWindow.add(cells, stripe * stride + window.offset(slice), slice, n);
+        total.add(n);
+    }
+
+    /**
+     * Gets the amount of events within the window.
+     *
+     * @return count
+     */
+    public long getWindowCount() {
+        long now = window.now();
+        long sum = 0;
+
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            for (int slot = 0; slot < window.getSlices(); slot++) {
+                sum += window.count(cells, stripe * stride + slot, now);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the events per second within the window.
+     *
+     * @return rate
+     */
+    public double getRate() {
+        return getWindowCount() / window.coveredSeconds();
+    }
+
+    /**
+     * Gets the amount of events since creation.
+     *
+     * @return total
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.telemetry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram over a sliding window of time: old observations decay out of it slice by slice, and its size is
+ * fixed by the amount of buckets and slices. Meant for infrequent observations such as finished games, so it is
+ * not striped; recording never locks nor allocates.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class RollingHistogram {
+
+    private final RollingWindow window;
+    private final AtomicLongArray cells;
+    private final int buckets;
+
+    /**
+     * Constructs a new RollingHistogram.
+     *
+     * @param buckets       amount of buckets
+     * @param windowSeconds length of the window
+     * @param slices        amount of slices the window is split into
+     */
+    public RollingHistogram(int buckets, int windowSeconds, int slices) {
+        window = new RollingWindow(windowSeconds, slices);
+        this.buckets = buckets;
+        cells = new AtomicLongArray(buckets * slices);
+    }
+
+    /**
+     * Records an observation.
+     *
+     * @param bucket bucket of the observation, below {@link #getBuckets()}
+     */
+    public void record(int bucket) {
+        long slice = window.now();
+        RollingWindow.add(cells, bucket * window.getSlices() + window.offset(slice), slice, 1);
+    }
+
+    /**
+     * Copies the counts of each bucket within the window.
+     *
+     * @param counts destination, of at least {@link #getBuckets()} elements
+     * @return the total count
+     */
+    public long snapshot(long[] counts) {
+        long now = window.now();
+        long total = 0;
+
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long count = 0;
+
+            for (int slot = 0; slot < window.getSlices(); slot++) {
+                count += window.count(cells, bucket * window.getSlices() + slot, now);
+            }
+            counts[bucket] = count;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Finds the bucket below which the given fraction of counts fall.
+     *
+     * @param counts   counts of each bucket, as copied by {@link #snapshot(long[])}
+     * @param total    total count
+     * @param fraction fraction, such as 0.99
+     * @return bucket index, or -1 if there are no counts
+     */
+    public static int percentileBucket(long[] counts, long total, double fraction) {
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+
+            if (seen >= target) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.telemetry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A window of time split into slices, and the cells counting events per slice. Each cell packs the slice it
+ * counts for into its upper 32 bits and the count into its lower 32 bits, so a cell reused for a later slice is
+ * reset by the same compare-and-set that counts the first event in it, and stale cells are told apart when read.
+ * Nothing has to expire the old slices, so the memory used never grows.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+final class RollingWindow {
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    private final long sliceNanos;
+    private final int slices;
+    private final long origin = System.nanoTime();
+
+    /**
+     * Constructs a new RollingWindow.
+     *
+     * @param windowSeconds length of the window
+     * @param slices        amount of slices the window is split into
+     */
+    RollingWindow(int windowSeconds, int slices) {
+        if (windowSeconds < 1 || slices < 1) {
+            throw new IllegalArgumentException("Window must be at least 1 second in 1 slice");
+        }
+        this.slices = slices;
+        sliceNanos = windowSeconds * 1_000_000_000L / slices;
+    }
+
+    /**
+     * Gets the current slice, counting from the creation of this window.
+     *
+     * @return slice number
+     */
+    long now() {
+        return (System.nanoTime() - origin) / sliceNanos;
+    }
+
+    /**
+     * Gets the position of a slice within a row of {@link #getSlices()} cells.
+     *
+     * @param slice slice number
+     * @return cell offset
+     */
+    int offset(long slice) {
+        return (int) (slice % slices);
+    }
+
+    /**
+     * Adds to the count of a cell for the given slice, resetting it first if it counts for an older slice.
+     *
+     * @param cells cells
+     * @param cell  cell index
+     * @param slice slice number
+     * @param n     amount to add
+     */
+    static void add(AtomicLongArray cells, int cell, long slice, long n) {
+        long tag = (slice & COUNT_MASK) << 32;
+
+        while (true) {
+            long old = cells.get(cell);
+            long next = (old & ~COUNT_MASK) == tag ? old + n : tag | n;
+
+            if (cells.compareAndSet(cell, old, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the count of a cell if it is for a slice within the window ending at the given slice.
+     *
+     * @param cells cells
+     * @param cell  cell index
+     * @param now   current slice number
+     * @return count, 0 if stale
+     */
+    long count(AtomicLongArray cells, int cell, long now) {
+        long value = cells.get(cell);
+        return ((now - (value >>> 32)) & COUNT_MASK) < slices ? value & COUNT_MASK : 0;
+    }
+
+    /**
+     * Gets the seconds covered by the window up to now, shorter than the window until it has filled once but
+     * at least one slice, so rates do not spike just after creation.
+     *
+     * @return seconds
+     */
+    double coveredSeconds() {
+        long elapsed = System.nanoTime() - origin;
+        long covered = Math.min(elapsed, slices * sliceNanos - sliceNanos + elapsed % sliceNanos);
+        return Math.max(covered, sliceNanos) / 1e9;
+    }
+
+    int getSlices() {
+        return slices;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package notpure.game2048.telemetry;
+
+import notpure.game2048.util.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * Live aggregates across all games of the process: moves per second, finished games per minute, and the score
+ * percentiles and maximum tiles of the games finished, all over the last {@value #WINDOW_SECONDS} seconds, along
+ * with totals and the counters other components register. Recording is lock-free and allocation-free, and the
+ * memory used is fixed.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class Telemetry {
+
+    /**
+     * The length of the window the rates and distributions are over.
+     */
+    public static final int WINDOW_SECONDS = 60;
+    /**
+     * The amount of slices the window is split into, the oldest dropping out as a new one starts.
+     */
+    private static final int SLICES = 12;
+    /**
+     * The maximum tiles told apart, as exponents, larger ones being counted with the largest.
+     */
+    private static final int MAX_TILE_EXPONENT = 17;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final Telemetry GLOBAL = new Telemetry();
+
+    private final RollingCounter moves = new RollingCounter(WINDOW_SECONDS, SLICES);
+    private final RollingCounter scoreGained = new RollingCounter(WINDOW_SECONDS, SLICES);
+    private final RollingCounter gamesFinished = new RollingCounter(WINDOW_SECONDS, SLICES);
+    private final RollingCounter finalScoreSum = new RollingCounter(WINDOW_SECONDS, SLICES);
+    private final RollingHistogram finalScores = new RollingHistogram(LatencyHistogram.BUCKET_COUNT,
+            WINDOW_SECONDS, SLICES);
+    private final RollingHistogram maxTiles = new RollingHistogram(MAX_TILE_EXPONENT + 1, WINDOW_SECONDS, SLICES);
+    /**
+     * Counters kept by other components, read when exporting.
+     */
+    private final CopyOnWriteArrayList<Counter> counters = new CopyOnWriteArrayList<>();
+
+    /**
+     * Gets the telemetry shared by all games of the process.
+     *
+     * @return telemetry
+     */
+    public static Telemetry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Records a move.
+     */
+    public void recordMove() {
+        moves.increment();
+    }
+
+    /**
+     * Records moves, for callers batching them.
+     *
+     * @param count amount of moves
+     */
+    public void recordMoves(long count) {
+        moves.add(count);
+    }
+
+    /**
+     * Records score gained by combining tiles.
+     *
+     * @param score score
+     */
+    public void recordScore(long score) {
+        scoreGained.add(score);
+    }
+
+    /**
+     * Records a game which can no longer be moved in.
+     *
+     * @param score   final score
+     * @param maxTile largest tile value
+     */
+    public void recordGameOver(int score, int maxTile) {
+        gamesFinished.increment();
+        finalScoreSum.add(score);
+        finalScores.record(LatencyHistogram.bucketIndex(Math.max(0, score)));
+        int exponent = maxTile > 0 ? 31 - Integer.numberOfLeadingZeros(maxTile) : 0;
+        maxTiles.record(Math.min(exponent, MAX_TILE_EXPONENT));
+    }
+
+    /**
+     * Exports a counter kept by another component, replacing any registered under the same name.
+     *
+     * @param name  metric name, ending in {@code _total}
+     * @param help  metric description
+     * @param value reads the counter, from any thread
+     */
+    public synchronized void registerCounter(String name, String help, LongSupplier value) {
+        counters.removeIf(counter -> counter.name.equals(name));
+        counters.add(new Counter(name, help, value));
+    }
+
+    /**
+     * Writes the aggregates in the Prometheus text exposition format.
+     *
+     * @param out destination
+     */
+    public void writePrometheus(StringBuilder out) {
+        metric(out, "game2048_moves_total", "counter", "Moves made.", moves.getTotal());
+        metric(out, "game2048_moves_per_second", "gauge", "Moves per second over the window.", moves.getRate());
+        metric(out, "game2048_score_gained_total", "counter", "Score gained by combining tiles.",
+                scoreGained.getTotal());
+        metric(out, "game2048_games_finished_total", "counter", "Games played until no move was left.",
+                gamesFinished.getTotal());
+        metric(out, "game2048_games_finished_per_minute", "gauge", "Games finished per minute over the window.",
+                gamesFinished.getRate() * 60);
+
+        // Final scores of the games finished within the window
+        long[] counts = new long[finalScores.getBuckets()];
+        long count = finalScores.snapshot(counts);
+        header(out, "game2048_final_score", "summary",
+                "Final scores of the games finished, the quantiles being over the window.");
+
+        for (double quantile : QUANTILES) {
+            int bucket = RollingHistogram.percentileBucket(counts, count, quantile);
+            long value = bucket == -1 ? 0 : LatencyHistogram.bucketLowerBound(bucket + 1) - 1;
+            out.append("game2048_final_score{quantile=\"").append(quantile).append("\"} ").append(value)
+                    .append('\n');
+        }
+        out.append("game2048_final_score_sum ").append(finalScoreSum.getTotal()).append('\n');
+        out.append("game2048_final_score_count ").append(gamesFinished.getTotal()).append('\n');
+
+        // Largest tiles of the games finished within the window
+        counts = new long[maxTiles.getBuckets()];
+        maxTiles.snapshot(counts);
+        header(out, "game2048_max_tile_games", "gauge", "Games finished over the window by largest tile.");
+
+        for (int exponent = 1; exponent < counts.length; exponent++) {
+            out.append("game2048_max_tile_games{tile=\"").append(1 << exponent).append("\"} ")
+                    .append(counts[exponent]).append('\n');
+        }
+
+        for (Counter counter : counters) {
+            metric(out, counter.name, "counter", counter.help, counter.value.getAsLong());
+        }
+    }
+
+    private static void metric(StringBuilder out, String name, String type, String help, long value) {
+        header(out, name, type, help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void metric(StringBuilder out, String name, String type, String help, double value) {
+        header(out, name, type, help);
+        out.append(name).append(' ').append(String.format(Locale.ROOT, "%.3f", value)).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    public RollingCounter getMoves() {
+        return moves;
+    }
+
+    public RollingCounter getGamesFinished() {
+        return gamesFinished;
+    }
+
+    /**
+     * A counter registered by another component.
+     */
+    private static final class Counter {
+
+        private final String name;
+        private final String help;
+        private final LongSupplier value;
+
+        private Counter(String name, String help, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * A clone of the popular 2048 game.
+ * Copyright (C) 2016 Pure <https://github.com/purecs>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package notpure.game2048.util;
+
+/**
+ * A fixed-size histogram of latencies in nanoseconds, with buckets of at most 12.5% relative width.
+ * Recording never allocates. Histograms are not thread-safe, each thread records into its own and they
+ * are merged afterwards.
+ *
+ * @author Pure <https://github.com/purecs>
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * The amount of buckets covering all non-negative longs.
+     */
+    public static final int BUCKET_COUNT = 64 * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucketIndex(nanos)]++;
+        count++;
+        sum += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * Adds the recorded latencies of another histogram to this one.
+     *
+     * @param other histogram to add
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Removes all recorded latencies.
+     */
+    public void clear() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * Gets the latency below which the given fraction of recorded latencies fall, rounded up to the top of its
+     * bucket.
+     *
+     * @param fraction fraction, such as 0.99
+     * @return latency in nanoseconds
+     */
+    public long percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(fraction * count);
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= Math.max(1, target)) {
+                return i + 1 == counts.length ? max : Math.min(max, bucketLowerBound(i + 1) - 1);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value non-negative value
+     * @return bucket index, below {@link #BUCKET_COUNT}
+     */
+    public static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets the smallest value of a bucket.
+     *
+     * @param index bucket index
+     * @return lower bound
+     */
+    public static long bucketLowerBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (magnitude - 1);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}